@@ -0,0 +1,173 @@
+package com.github.simkuenzi.webplay;
+
+import com.github.simkuenzi.webplay.record.Recorder;
+import com.github.simkuenzi.webplay.record.Recording;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+// Proxied requests per second through the recorder on one keep-alive client connection, one request at a time.
+// The request heads carry a large block of headers and cookies, so the numbers are dominated by header transfer.
+// It only uses Recorder.open and Recording.run, so it runs unchanged against the commits before the buffered
+// header transfer. Run with ./gradlew headerTransferBenchmark, see README for the options.
+public class HeaderTransferBenchmark {
+    private static final int PORT_OF_APP = 10022;
+    private static final int PORT_OF_RECORDER = 10011;
+
+    private final int warmup = Integer.getInteger("warmup", 200);
+    private final int requests = Integer.getInteger("requests", 1000);
+    private final int batches = Integer.getInteger("batches", 5);
+    private final byte[] request;
+
+    private HeaderTransferBenchmark(byte[] request) {
+        this.request = request;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path results = Path.of(System.getProperty("results", "build/reports/header-transfer/results.json"));
+        String page = "<html><body>" + "<p>Some text of the page.</p>".repeat(100) + "</body></html>";
+        byte[] body = page.getBytes(StandardCharsets.UTF_8);
+        byte[] response = ("HTTP/1.1 200 OK\r\nContent-Type: text/html;charset=utf-8\r\nContent-Length: " + body.length + "\r\n\r\n" + page)
+                .getBytes(StandardCharsets.UTF_8);
+        startApp(response);
+
+        StringBuilder head = new StringBuilder("GET /page HTTP/1.1\r\nHost: localhost\r\nUser-Agent: webplay\r\nAccept: text/html\r\nAccept-Language: en\r\n");
+        for (int i = 0; i < 10; i++) {
+            head.append("X-Header-").append(i).append(": ").append("h".repeat(60)).append("\r\n");
+        }
+        head.append("Cookie: ");
+        for (int i = 0; i < 60; i++) {
+            head.append(i == 0 ? "" : "; ").append("cookie").append(i).append('=').append("v".repeat(40));
+        }
+        byte[] request = head.append("\r\n\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+        HeaderTransferBenchmark benchmark = new HeaderTransferBenchmark(request);
+
+        List<Long> direct;
+        try (Socket socket = new Socket("localhost", PORT_OF_APP)) {
+            direct = benchmark.measure(socket);
+        }
+        System.out.printf("direct %s requests/s%n", direct);
+
+        Path directory = Files.createTempDirectory("webplay-benchmark");
+        Recording recording = new Recorder().open(PORT_OF_RECORDER, "/");
+        Thread recorder = new Thread(() -> {
+            try {
+                recording.run(PORT_OF_APP, directory.resolve("recording.xml"), List.of(), directory.resolve("stop"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        recorder.setDaemon(true);
+        recorder.start();
+        Thread.sleep(500);
+        // The client connection is never closed. Before the buffered transfer, the recorder spins on a closed connection.
+        List<Long> proxied = benchmark.measure(new Socket("localhost", PORT_OF_RECORDER));
+        System.out.printf("proxied %s requests/s%n", proxied);
+
+        Files.createDirectories(results.toAbsolutePath().getParent());
+        try (Writer out = Files.newBufferedWriter(results, StandardCharsets.UTF_8)) {
+            out.write(String.format(Locale.ROOT, "{\"requestHeadBytes\":%d,\"responseBytes\":%d,\"requestsPerBatch\":%d,"
+                            + "\"directRequestsPerSecond\":%s,\"proxiedRequestsPerSecond\":%s}%n",
+                    request.length, response.length, benchmark.requests, json(direct), json(proxied)));
+        }
+        System.exit(0);
+    }
+
+    // Requests per second of each batch, after the warmup.
+    private List<Long> measure(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        OutputStream out = socket.getOutputStream();
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        for (int i = 0; i < warmup; i++) {
+            exchange(out, in);
+        }
+        List<Long> perSecond = new ArrayList<>();
+        for (int batch = 0; batch < batches; batch++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                exchange(out, in);
+            }
+            perSecond.add(Math.round(requests / ((System.nanoTime() - start) / 1e9)));
+        }
+        return perSecond;
+    }
+
+    private void exchange(OutputStream out, InputStream in) throws IOException {
+        out.write(request);
+        out.flush();
+        int length = readHead(in);
+        if (in.readNBytes(length).length != length) {
+            throw new EOFException();
+        }
+    }
+
+    // Returns the Content-Length of the head read.
+    private static int readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        int last = 0;
+        while (last != 0x0d0a0d0a) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            head.append((char) b);
+            last = (last << 8) | b;
+        }
+        for (String line : head.toString().split("\r\n")) {
+            if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                return Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        return 0;
+    }
+
+    // Answers every request with one write of the same response.
+    private static void startApp(byte[] response) throws IOException {
+        ServerSocket server = new ServerSocket(PORT_OF_APP);
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                    socket.setTcpNoDelay(true);
+                } catch (IOException e) {
+                    return;
+                }
+                Thread connection = new Thread(() -> {
+                    try (socket) {
+                        InputStream in = new BufferedInputStream(socket.getInputStream());
+                        OutputStream out = socket.getOutputStream();
+                        while (true) {
+                            in.readNBytes(readHead(in));
+                            out.write(response);
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        // The client went away.
+                    }
+                });
+                connection.setDaemon(true);
+                connection.start();
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private static String json(List<Long> values) {
+        return values.stream().map(String::valueOf).collect(Collectors.joining(",", "[", "]"));
+    }
+}
@@ -0,0 +1,227 @@
+package com.github.simkuenzi.webplay;
+
+import com.github.simkuenzi.webplay.play.Load;
+import com.github.simkuenzi.webplay.play.Player;
+import com.github.simkuenzi.webplay.play.RecordedTest;
+import com.github.simkuenzi.webplay.play.Report;
+import com.github.simkuenzi.webplay.record.Recorder;
+import com.github.simkuenzi.webplay.record.Recording;
+import com.github.simkuenzi.webplay.stats.Histogram;
+import io.javalin.Javalin;
+
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Records synthetic traffic against a local app at increasing concurrency and replays the recording.
+// Everything runs on localhost, so the numbers depend only on the machine.
+// Run with ./gradlew throughputBenchmark, see README for the options.
+public class ThroughputBenchmark {
+    private static final int PORT_OF_APP = 10022;
+    private static final int PORT_OF_RECORDER = 10011;
+    private static final String FORM = "application/x-www-form-urlencoded";
+
+    private final int requests = Integer.getInteger("requests", 2000);
+    private final Duration replayDuration = Duration.ofSeconds(Integer.getInteger("replaySeconds", 10));
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final Path directory;
+    private int runs;
+
+    private ThroughputBenchmark(Path directory) {
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> levels = new ArrayList<>();
+        for (String level : System.getProperty("concurrency", "1,4,16,32").split(",")) {
+            levels.add(Integer.parseInt(level.trim()));
+        }
+        Path results = Path.of(System.getProperty("results", "build/reports/throughput/results.json"));
+        double minRecorderThroughput = Double.parseDouble(System.getProperty("minRecorderThroughput", "0"));
+        double maxAddedLatencyMillis = Double.parseDouble(System.getProperty("maxAddedLatencyMillis", "Infinity"));
+
+        String page;
+        try (InputStream in = ThroughputBenchmark.class.getResourceAsStream("form.html")) {
+            page = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Javalin app = Javalin.create().start(PORT_OF_APP);
+        app.get("/customers/:id", ctx -> ctx.html(page.replace("4711", ctx.pathParam("id"))));
+        app.post("/customers/:id", ctx -> ctx.redirect("/customers/" + ctx.pathParam("id")));
+
+        Path directory = Files.createTempDirectory("webplay-benchmark");
+        List<Result> measured = new ArrayList<>();
+        try {
+            ThroughputBenchmark benchmark = new ThroughputBenchmark(directory);
+            // Warms up app, recorder and player. The results are dropped.
+            benchmark.measure(1, Math.max(1, benchmark.requests / 10));
+            for (int users : levels) {
+                Result result = benchmark.measure(users, benchmark.requests);
+                System.out.println(result);
+                measured.add(result);
+            }
+        } finally {
+            app.stop();
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+
+        Files.createDirectories(results.toAbsolutePath().getParent());
+        try (Writer out = Files.newBufferedWriter(results, StandardCharsets.UTF_8)) {
+            out.write("[");
+            for (int i = 0; i < measured.size(); i++) {
+                out.write(String.format("%s%n%s", i == 0 ? "" : ",", measured.get(i).json()));
+            }
+            out.write(String.format("%n]%n"));
+        }
+        System.out.printf("Results written to %s%n", results.toAbsolutePath());
+
+        boolean failed = false;
+        for (Result result : measured) {
+            if (result.recorderThroughput < minRecorderThroughput) {
+                System.out.printf("%d users: recorder throughput %.1f requests/s is below %.1f.%n",
+                        result.users, result.recorderThroughput, minRecorderThroughput);
+                failed = true;
+            }
+            if (result.addedLatencyMillis(99) > maxAddedLatencyMillis) {
+                System.out.printf("%d users: p99 latency added by the recorder %.3f ms is above %.3f ms.%n",
+                        result.users, result.addedLatencyMillis(99), maxAddedLatencyMillis);
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private Result measure(int users, int count) throws Exception {
+        Result result = new Result(users, count);
+
+        long start = System.nanoTime();
+        drive(URI.create("http://localhost:" + PORT_OF_APP), users, count, result.direct);
+        result.directThroughput = count / seconds(System.nanoTime() - start);
+
+        int run = runs++;
+        Path outputFile = directory.resolve("recording-" + run + ".xml");
+        Path stopFile = directory.resolve("stop-" + run);
+        Files.createFile(stopFile);
+        Recording recording = new Recorder().open(PORT_OF_RECORDER, "/");
+        Thread recorder = new Thread(() -> {
+            try {
+                recording.run(PORT_OF_APP, outputFile, List.of("text/html", FORM), stopFile);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        recorder.start();
+        try {
+            start = System.nanoTime();
+            drive(URI.create("http://localhost:" + PORT_OF_RECORDER), users, count, result.proxied);
+            result.recorderThroughput = count / seconds(System.nanoTime() - start);
+        } finally {
+            recording.close();
+            recorder.join();
+        }
+        result.bytesPerRequest = (double) Files.size(outputFile) / count;
+
+        Report report = new RecordedTest(outputFile).load("http://localhost:" + PORT_OF_APP, Player.newPlayer(),
+                Load.users(users).duration(replayDuration));
+        result.replayThroughput = report.throughput();
+        return result;
+    }
+
+    // Each user sends its share of the requests, three page views for every form post.
+    private void drive(URI baseUri, int users, int count, Histogram latency) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int user = 0; user < users; user++) {
+                futures.add(executor.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < count) {
+                        URI uri = baseUri.resolve("/customers/" + i);
+                        HttpRequest request = i % 4 == 3
+                                ? HttpRequest.newBuilder(uri).header("Content-Type", FORM)
+                                        .POST(HttpRequest.BodyPublishers.ofString("firstName=Anna&lastName=Muster&zip=3011&city=Bern")).build()
+                                : HttpRequest.newBuilder(uri).GET().build();
+                        long sent = System.nanoTime();
+                        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        latency.record(System.nanoTime() - sent);
+                        if (response.statusCode() >= 400) {
+                            throw new IllegalStateException(String.format("%s %s answered %d.", request.method(), uri, response.statusCode()));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static class Result {
+        private final int users;
+        private final int requests;
+        private final Histogram direct = new Histogram();
+        private final Histogram proxied = new Histogram();
+        private double directThroughput;
+        private double recorderThroughput;
+        private double bytesPerRequest;
+        private double replayThroughput;
+
+        private Result(int users, int requests) {
+            this.users = users;
+            this.requests = requests;
+        }
+
+        // The difference of the percentiles with and without recorder. It is not the percentile of the differences.
+        private double addedLatencyMillis(double percentile) {
+            return millis(proxied.percentile(percentile) - direct.percentile(percentile));
+        }
+
+        private String json() {
+            return String.format(Locale.ROOT, "{\"users\":%d,\"requests\":%d,"
+                            + "\"directRequestsPerSecond\":%.1f,\"recorderRequestsPerSecond\":%.1f,\"replayRequestsPerSecond\":%.1f,"
+                            + "\"bytesPerRequest\":%.1f,\"addedLatencyMillis\":{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f}}",
+                    users, requests, directThroughput, recorderThroughput, replayThroughput, bytesPerRequest,
+                    addedLatencyMillis(50), addedLatencyMillis(90), addedLatencyMillis(99));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%3d users: direct %.1f req/s, recorder %.1f req/s, replay %.1f req/s, %.0f bytes/request, "
+                            + "added latency p50 %.3f ms, p99 %.3f ms",
+                    users, directThroughput, recorderThroughput, replayThroughput, bytesPerRequest,
+                    addedLatencyMillis(50), addedLatencyMillis(99));
+        }
+    }
+}
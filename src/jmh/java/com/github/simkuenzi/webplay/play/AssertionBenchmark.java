@@ -0,0 +1,46 @@
+package com.github.simkuenzi.webplay.play;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Evaluates the assertions of a recorded request against a realistic form page, as play does after receiving it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AssertionBenchmark {
+    private String html;
+    private RecordedRequest request;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (InputStream in = AssertionBenchmark.class.getResourceAsStream("/com/github/simkuenzi/webplay/form.html")) {
+            html = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Selectors selectors = new Selectors();
+        List<RecordedAssertion> assertions = List.of(
+                RecordedAssertion.attr(selectors, "input[name=csrf]", "value", "3f9c1e0a7b2d4c8e9f1a2b3c4d5e6f70"),
+                RecordedAssertion.attr(selectors, "input[name=firstName]", "value", "Anna"),
+                RecordedAssertion.attr(selectors, "input[name=lastName]", "value", "Muster"),
+                RecordedAssertion.attr(selectors, "input[name=birthDate]", "value", "1984-03-12"),
+                RecordedAssertion.attr(selectors, "input[name=email]", "value", "anna.muster@example.com"),
+                RecordedAssertion.attr(selectors, "input[name=phone]", "value", "+41 31 123 45 67"),
+                RecordedAssertion.attr(selectors, "input[name=street]", "value", "Bahnhofstrasse 1"),
+                RecordedAssertion.attr(selectors, "input[name=zip]", "value", "3011"),
+                RecordedAssertion.attr(selectors, "input[name=city]", "value", "Bern"),
+                RecordedAssertion.attr(selectors, "input[name=country]", "value", "Switzerland"),
+                RecordedAssertion.attr(selectors, "input[name=creditLimit]", "value", "2500.00"),
+                RecordedAssertion.text(selectors, "textarea[name=notes]", "Prefers delivery in the morning.\nCall before delivering large items."),
+                RecordedAssertion.text(selectors, "textarea[name=internalNotes]", "Key account since 2012."));
+        request = new RecordedRequest("GET", "/customers/4711", List.of(), new byte[0], assertions);
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        request.evaluate(0, html, (message, expected, actual) -> blackhole.consume(actual));
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.record.AssertionBuilder;
+import com.github.simkuenzi.webplay.record.Headers;
+import com.github.simkuenzi.webplay.record.Payload;
+import com.github.simkuenzi.webplay.record.RequestBuilder;
+import com.github.simkuenzi.webplay.record.XmlTest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Loads a generated recording, once as a whole and once request by request, in both formats.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScenarioBenchmark {
+    @Param({"1000", "5000"})
+    private int requests;
+
+    @Param({"xml", "wpb"})
+    private String format;
+
+    private Path file;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = Files.createTempFile("webplay-benchmark", ".xml");
+        Headers headers = new Headers()
+                .add("Host", "localhost:10011")
+                .add("User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:78.0) Gecko/20100101 Firefox/78.0")
+                .add("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+                .add("Cookie", "JSESSIONID=node01fnq9pcqa0b1v1y5lq5x0ykqz1; theme=dark");
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            RequestBuilder requestBuilder = new XmlTest(out).test();
+            for (int i = 0; i < requests; i++) {
+                AssertionBuilder assertionBuilder = requestBuilder.request("/customers/" + i, "GET", headers, Payload.of(""));
+                for (int field = 0; field < 10; field++) {
+                    assertionBuilder = assertionBuilder.assertion("value", "value" + field, "input[name=field" + field + "]");
+                }
+                requestBuilder = assertionBuilder.assertion("Some notes", "textarea[name=notes]");
+            }
+            requestBuilder.end();
+        }
+        if (format.equals("wpb")) {
+            Path binary = Files.createTempFile("webplay-benchmark", ".wpb");
+            ScenarioConverter.toBinary(file, binary);
+            Files.delete(file);
+            file = binary;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public Scenario parse() throws Exception {
+        try (InputStream in = Files.newInputStream(file)) {
+            return Scenario.parse(in);
+        }
+    }
+
+    @Benchmark
+    public int stream() throws Exception {
+        int count = 0;
+        try (InputStream in = Files.newInputStream(file); ScenarioReader reader = new ScenarioReader(in)) {
+            while (reader.next() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.simkuenzi.webplay.record;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Forwards one message through Recording.transfer between in-memory channels.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransferBenchmark {
+    private static final String REQUEST = "GET /customers/4711 HTTP/1.1\r\n" +
+            "Host: localhost:10011\r\n" +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:78.0) Gecko/20100101 Firefox/78.0\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8\r\n" +
+            "Accept-Language: de-CH,de;q=0.8,en-US;q=0.5,en;q=0.3\r\n" +
+            "Accept-Encoding: gzip, deflate\r\n" +
+            "Referer: http://localhost:10011/customers\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Cookie: JSESSIONID=node01fnq9pcqa0b1v1y5lq5x0ykqz1; theme=dark\r\n" +
+            "Upgrade-Insecure-Requests: 1\r\n" +
+            "\r\n";
+
+    private ServerSocketChannel serverSocket;
+    private Recording recording;
+    private CapturePool captures;
+    private final RecordingMetrics metrics = new RecordingMetrics();
+    private ByteBuffer buffer;
+    private MemoryChannel request;
+    private MemoryChannel response;
+    private MemoryChannel chunkedResponse;
+    private final Sink sink = new Sink();
+
+    @Setup
+    public void setUp() throws IOException {
+        // The recording is never run, its server socket is not even bound.
+        serverSocket = ServerSocketChannel.open();
+        recording = new Recording(serverSocket, new Recorder());
+        captures = new CapturePool(256 * 1024 * 1024, 64 * 1024);
+        buffer = ByteBuffer.allocateDirect(16 * 1024);
+
+        byte[] html;
+        try (InputStream in = TransferBenchmark.class.getResourceAsStream("/com/github/simkuenzi/webplay/form.html")) {
+            html = in.readAllBytes();
+        }
+        String head = "HTTP/1.1 200 OK\r\n" +
+                "Date: Mon, 20 Jul 2020 12:00:00 GMT\r\n" +
+                "Content-Type: text/html;charset=utf-8\r\n" +
+                "Set-Cookie: theme=dark; Path=/\r\n" +
+                "Set-Cookie: lastVisit=4711; Path=/\r\n";
+        request = new MemoryChannel(REQUEST.getBytes(StandardCharsets.US_ASCII));
+        response = new MemoryChannel(concat((head + "Content-Length: " + html.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII), html));
+
+        byte[] chunked = (head + "Transfer-Encoding: chunked\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        for (int offset = 0; offset < html.length; offset += 1024) {
+            int length = Math.min(1024, html.length - offset);
+            chunked = concat(chunked, (Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            chunked = concat(chunked, Arrays.copyOfRange(html, offset, offset + length));
+            chunked = concat(chunked, "\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        chunkedResponse = new MemoryChannel(concat(chunked, "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Benchmark
+    public Object request() throws Exception {
+        return recording.transfer(new InboundChannel(request.rewind(), buffer), sink, metrics.requests(), captures,
+                (urlPath, method, headers) -> Recording.requestFraming(headers),
+                mime -> true, TransferBenchmark::release);
+    }
+
+    @Benchmark
+    public Object response() throws Exception {
+        return recording.transfer(new InboundChannel(response.rewind(), buffer), sink, metrics.responses(), captures,
+                (status, version, headers) -> Recording.responseFraming("GET", status, headers),
+                mime -> true, TransferBenchmark::release);
+    }
+
+    @Benchmark
+    public Object responseNotCaptured() throws Exception {
+        return recording.transfer(new InboundChannel(response.rewind(), buffer), sink, metrics.responses(), captures,
+                (status, version, headers) -> Recording.responseFraming("GET", status, headers),
+                mime -> false, TransferBenchmark::release);
+    }
+
+    @Benchmark
+    public Object chunkedResponse() throws Exception {
+        return recording.transfer(new InboundChannel(chunkedResponse.rewind(), buffer), sink, metrics.responses(), captures,
+                (status, version, headers) -> Recording.responseFraming("GET", status, headers),
+                mime -> true, TransferBenchmark::release);
+    }
+
+    private static Headers release(String urlPath, String method, String version, Headers headers, Payload payload, String mime, long bytes, long headReceived) {
+        if (payload != null) {
+            payload.close();
+        }
+        return headers;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    private static class MemoryChannel implements ReadableByteChannel {
+        private final ByteBuffer bytes;
+
+        private MemoryChannel(byte[] bytes) {
+            this.bytes = ByteBuffer.wrap(bytes);
+        }
+
+        private MemoryChannel rewind() {
+            bytes.rewind();
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!bytes.hasRemaining()) {
+                return -1;
+            }
+            int length = Math.min(dst.remaining(), bytes.remaining());
+            dst.put(bytes.duplicate().limit(bytes.position() + length));
+            bytes.position(bytes.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class Sink implements GatheringByteChannel {
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += write(srcs[i]);
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int written = src.remaining();
+            src.position(src.limit());
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
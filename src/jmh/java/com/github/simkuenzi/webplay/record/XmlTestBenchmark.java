@@ -0,0 +1,44 @@
+package com.github.simkuenzi.webplay.record;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+// Writes a recorded test through XmlTest, without the cost of a file.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class XmlTestBenchmark {
+    @Param({"100"})
+    private int requests;
+
+    private Headers headers;
+    private Payload payload;
+
+    @Setup
+    public void setUp() {
+        headers = new Headers()
+                .add("Host", "localhost:10011")
+                .add("User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:78.0) Gecko/20100101 Firefox/78.0")
+                .add("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+                .add("Content-Type", "application/x-www-form-urlencoded")
+                .add("Content-Length", "118")
+                .add("Cookie", "JSESSIONID=node01fnq9pcqa0b1v1y5lq5x0ykqz1; theme=dark");
+        // Closing a payload made from a string does not release anything, so it can be written again.
+        payload = Payload.of("csrf=3f9c1e0a7b2d4c8e&firstName=Anna&lastName=Muster&email=anna.muster%40example.com&notes=Prefers+delivery");
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        RequestBuilder requestBuilder = new XmlTest(Writer.nullWriter()).test();
+        for (int i = 0; i < requests; i++) {
+            requestBuilder = requestBuilder.request("/customers/" + i, "POST", headers, payload)
+                    .assertion("value", "Anna", "input[name=firstName]")
+                    .assertion("value", "Muster", "input[name=lastName]")
+                    .assertion("value", "anna.muster@example.com", "input[name=email]")
+                    .assertion("Prefers delivery in the morning.\nCall before delivering large items.", "textarea[name=notes]");
+        }
+        requestBuilder.end();
+    }
+}
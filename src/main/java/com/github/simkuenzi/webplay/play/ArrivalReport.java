@@ -0,0 +1,63 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.stats.Histogram;
+
+import java.time.Duration;
+import java.util.List;
+
+public class ArrivalReport extends Report {
+    private final double targetRate;
+    private final Duration window;
+    private final long startedInTime;
+    private final long missed;
+    private final Histogram startLag;
+    private final Histogram iterationLatency;
+
+    ArrivalReport(List<StepStatistics> steps, Duration elapsed, long iterations, double targetRate, Duration window,
+                  long startedInTime, long missed, Histogram startLag, Histogram iterationLatency) {
+        super(steps, elapsed, iterations);
+        this.targetRate = targetRate;
+        this.window = window;
+        this.startedInTime = startedInTime;
+        this.missed = missed;
+        this.startLag = startLag;
+        this.iterationLatency = iterationLatency;
+    }
+
+    // Iterations per second
+    public double targetRate() {
+        return targetRate;
+    }
+
+    // Iterations per second which actually started within the scheduled duration
+    public double sendRate() {
+        return startedInTime / (window.toNanos() / 1e9);
+    }
+
+    // Fraction of the target rate which was not reached
+    public double shortfall() {
+        return Math.max(0, 1 - sendRate() / targetRate);
+    }
+
+    // Iterations which were due but found no free worker within the scheduled duration. They are not sent.
+    public long missed() {
+        return missed;
+    }
+
+    // Delay between scheduled and actual start of the iterations in nanoseconds
+    public Histogram startLag() {
+        return startLag;
+    }
+
+    // Latency of whole iterations measured from their scheduled start in nanoseconds
+    public Histogram iterationLatency() {
+        return iterationLatency;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + String.format(
+                "target %.1f iterations/s, sent %.1f iterations/s (%.1f%% short, %d missed), start lag p99 %.3f ms, iteration p99 %.3f ms%n",
+                targetRate, sendRate(), shortfall() * 100, missed, startLag.percentile(99) / 1e6, iterationLatency.percentile(99) / 1e6);
+    }
+}
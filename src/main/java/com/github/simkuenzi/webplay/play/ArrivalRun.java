@@ -0,0 +1,67 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.stats.Histogram;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Starts iterations on a fixed schedule. Latencies are measured from the scheduled time rather than from the
+// actual send time, so that a stalled system does not hide its delays by sending fewer requests
+// (coordinated omission).
+class ArrivalRun extends Run {
+    private final Rate rate;
+    private final Histogram startLag = new Histogram();
+    private final Histogram iterationLatency = new Histogram();
+    private final LongAdder startedInTime = new LongAdder();
+    private final LongAdder missed = new LongAdder();
+
+    ArrivalRun(Scenario scenario, String baseUrl, Player player, Rate rate) {
+        super(scenario, baseUrl, player);
+        this.rate = rate;
+    }
+
+    ArrivalReport run() throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + rate.duration().toNanos();
+        ExecutorService workers = Executors.newFixedThreadPool(rate.maxConcurrency());
+        try {
+            long scheduled = 0;
+            for (long intended = start; intended < end; intended = start + (long) (++scheduled * 1e9 / rate.perSecond())) {
+                TimeUnit.NANOSECONDS.sleep(intended - System.nanoTime());
+                long intendedStart = intended;
+                workers.execute(() -> iteration(intendedStart, end));
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            workers.shutdownNow();
+        }
+        return new ArrivalReport(steps, Duration.ofNanos(System.nanoTime() - start), iterations.get(),
+                rate.perSecond(), rate.duration(), startedInTime.sum(), missed.sum(), startLag, iterationLatency);
+    }
+
+    private void iteration(long intendedStart, long end) {
+        long actualStart = System.nanoTime();
+        startLag.record(actualStart - intendedStart);
+        if (actualStart >= end) {
+            // The run is bounded by its duration. A backlog is not sent to an app which is already behind.
+            missed.increment();
+            return;
+        }
+        startedInTime.increment();
+        try {
+            // Only the first request can be late. Each further one is intended to be sent when its predecessor completes.
+            long intended = intendedStart;
+            for (int i = 0; i < requests.size(); i++) {
+                intended = step(i, intended);
+            }
+            iterationLatency.record(intended - intendedStart);
+            iterations.incrementAndGet();
+        } catch (InterruptedException e) {
+            // Run aborted
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.simkuenzi.webplay.play;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Parsing a response and checking all assertions of its request.
+@Name("com.github.simkuenzi.webplay.Assertions")
+@Label("Assertion Evaluation")
+@Category({"WebPlay", "Replay"})
+class AssertionEvent extends Event {
+    // Only asked whether the event is enabled. Without a recording, no event is allocated.
+    private static final AssertionEvent TYPE = new AssertionEvent();
+
+    @Label("Request Index")
+    int requestIndex;
+
+    @Label("Method")
+    String method;
+
+    @Label("URL Path")
+    String urlPath;
+
+    @Label("Assertions")
+    int assertions;
+
+    @Label("Failures")
+    int failures;
+
+    @Label("Body Length")
+    int bodyLength;
+
+    // Null if JFR does not record the event.
+    static AssertionEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        AssertionEvent event = new AssertionEvent();
+        event.begin();
+        return event;
+    }
+}
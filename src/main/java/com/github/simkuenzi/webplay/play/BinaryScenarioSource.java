@@ -0,0 +1,165 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.record.AssertionBuilder;
+import com.github.simkuenzi.webplay.record.BinaryFormat;
+import com.github.simkuenzi.webplay.record.ExchangeTiming;
+import com.github.simkuenzi.webplay.record.Headers;
+import com.github.simkuenzi.webplay.record.Payload;
+import com.github.simkuenzi.webplay.record.RequestBuilder;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.simkuenzi.webplay.record.BinaryFormat.ASSERTION_ATTR;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.END;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.MAGIC_LENGTH;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.PAYLOAD_BINARY;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.PAYLOAD_TEXT;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.REQUEST;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.STRING;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.STRING_SLOTS;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.VERSION;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.readVarInt;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.readVarLong;
+
+// Reads a recording in the binary format written by BinaryTest, where the format is described.
+class BinaryScenarioSource implements ScenarioSource {
+    private final DataInputStream in;
+    private final String[] slots = new String[STRING_SLOTS];
+    private boolean ended;
+
+    // The stream should be buffered, it is read in small pieces.
+    BinaryScenarioSource(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC_LENGTH];
+        this.in.readFully(magic);
+        if (!BinaryFormat.hasMagic(magic)) {
+            throw new IOException("Not a binary recording.");
+        }
+        int version = this.in.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException(String.format("Version %d of binary recordings is not supported.", version));
+        }
+    }
+
+    // A recording which has been interrupted ends after its last complete request.
+    @Override
+    public AssertionBuilder next(RequestBuilder requestBuilder) throws Exception {
+        while (!ended) {
+            int type = in.read();
+            if (type < 0) {
+                break;
+            }
+            ByteBuffer content;
+            try {
+                int length = readVarInt(in);
+                if (length < 0) {
+                    throw new IOException(String.format("Record of type %d has an invalid length.", type));
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                content = ByteBuffer.wrap(bytes);
+            } catch (EOFException e) {
+                break;
+            }
+            try {
+                switch (type) {
+                    case STRING:
+                        define(content);
+                        break;
+                    case REQUEST:
+                        return readRequest(content, requestBuilder);
+                    case END:
+                        ended = true;
+                        break;
+                    default:
+                        // Records of later versions are skipped.
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException(String.format("Record of type %d ends before its content.", type));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private AssertionBuilder readRequest(ByteBuffer content, RequestBuilder requestBuilder) throws Exception {
+        String urlPath = string(content);
+        String method = string(content);
+        Headers headers = new Headers();
+        for (int i = readVarInt(content); i > 0; i--) {
+            headers.add(string(content), string(content));
+        }
+
+        int payloadKind = readVarInt(content);
+        byte[] bytes = payloadKind == PAYLOAD_TEXT || payloadKind == PAYLOAD_BINARY ? bytes(content) : new byte[0];
+        Payload payload = payloadKind == PAYLOAD_BINARY ? Payload.of(bytes) : Payload.of(new String(bytes, StandardCharsets.UTF_8));
+
+        // Assertions are passed on after the request, which needs the timing following them.
+        List<String[]> assertions = new ArrayList<>();
+        for (int i = readVarInt(content); i > 0; i--) {
+            int kind = readVarInt(content);
+            String selector = string(content);
+            assertions.add(kind == ASSERTION_ATTR
+                    ? new String[]{selector, string(content), string(content)}
+                    : new String[]{selector, string(content)});
+        }
+
+        ExchangeTiming timing = null;
+        if (content.hasRemaining()) {
+            Instant timestamp = Instant.ofEpochSecond(readVarLong(content), readVarLong(content));
+            timing = new ExchangeTiming(timestamp, Duration.ofNanos(readVarLong(content)), Duration.ofNanos(readVarLong(content)));
+        }
+
+        AssertionBuilder assertionBuilder = requestBuilder.request(urlPath, method, headers, payload, timing);
+        for (String[] assertion : assertions) {
+            assertionBuilder = assertion.length == 3
+                    ? assertionBuilder.assertion(assertion[1], assertion[2], assertion[0])
+                    : assertionBuilder.assertion(assertion[1], assertion[0]);
+        }
+        return assertionBuilder;
+    }
+
+    private void define(ByteBuffer content) throws IOException {
+        int slot = readVarInt(content);
+        if (slot < 0 || slot >= STRING_SLOTS) {
+            throw new IOException(String.format("String slot %d is out of range.", slot));
+        }
+        slots[slot] = StandardCharsets.UTF_8.decode(content).toString();
+    }
+
+    private String string(ByteBuffer content) throws IOException {
+        int reference = readVarInt(content);
+        if (reference == 0) {
+            return new String(bytes(content), StandardCharsets.UTF_8);
+        }
+        String value = reference > 0 && reference <= STRING_SLOTS ? slots[reference - 1] : null;
+        if (value == null) {
+            throw new IOException(String.format("String slot %d is referenced before it is defined.", reference - 1));
+        }
+        return value;
+    }
+
+    private static byte[] bytes(ByteBuffer content) throws IOException {
+        int length = readVarInt(content);
+        if (length < 0 || length > content.remaining()) {
+            throw new IOException(String.format("Length %d exceeds the record.", length));
+        }
+        byte[] bytes = new byte[length];
+        content.get(bytes);
+        return bytes;
+    }
+}
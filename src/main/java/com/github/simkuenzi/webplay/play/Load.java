@@ -0,0 +1,59 @@
+package com.github.simkuenzi.webplay.play;
+
+import java.time.Duration;
+
+// Describes a load run. Each virtual user plays the scenario in recorded order, again and again,
+// until it has completed its iterations or the duration has elapsed.
+public class Load {
+    private final int users;
+    private Duration rampUp = Duration.ZERO;
+    private Integer iterations;
+    private Duration duration;
+
+    private Load(int users) {
+        this.users = users;
+    }
+
+    public static Load users(int users) {
+        if (users < 1) {
+            throw new IllegalArgumentException("At least one user is required.");
+        }
+        return new Load(users);
+    }
+
+    // Users are started evenly distributed over the ramp-up time.
+    public Load rampUp(Duration rampUp) {
+        this.rampUp = rampUp;
+        return this;
+    }
+
+    public Load iterations(int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    public Load duration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    int users() {
+        return users;
+    }
+
+    Duration rampUp() {
+        return rampUp;
+    }
+
+    // Without an explicit count, users iterate until the duration has elapsed, or once if there is no duration.
+    int iterations() {
+        if (iterations != null) {
+            return iterations;
+        }
+        return duration != null ? Integer.MAX_VALUE : 1;
+    }
+
+    Duration duration() {
+        return duration;
+    }
+}
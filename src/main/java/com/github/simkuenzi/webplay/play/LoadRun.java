@@ -0,0 +1,47 @@
+package com.github.simkuenzi.webplay.play;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class LoadRun extends Run {
+    private final Load load;
+
+    LoadRun(Scenario scenario, String baseUrl, Player player, Load load) {
+        super(scenario, baseUrl, player);
+        this.load = load;
+    }
+
+    Report run() throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = load.duration() == null ? Long.MAX_VALUE : start + load.duration().toNanos();
+        long rampUpStep = load.rampUp().toNanos() / load.users();
+        ExecutorService users = Executors.newFixedThreadPool(load.users());
+        try {
+            for (int user = 0; user < load.users(); user++) {
+                long startOfUser = start + user * rampUpStep;
+                users.execute(() -> user(startOfUser, deadline));
+            }
+            users.shutdown();
+            users.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            users.shutdownNow();
+        }
+        return new Report(steps, Duration.ofNanos(System.nanoTime() - start), iterations.get());
+    }
+
+    private void user(long startOfUser, long deadline) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(startOfUser - System.nanoTime());
+            for (int iteration = 0; iteration < load.iterations() && System.nanoTime() < deadline; iteration++) {
+                for (int i = 0; i < requests.size(); i++) {
+                    step(i, System.nanoTime());
+                }
+                iterations.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            // Run aborted
+        }
+    }
+}
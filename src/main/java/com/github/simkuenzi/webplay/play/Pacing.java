@@ -0,0 +1,64 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.record.ExchangeTiming;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+// How a replay keeps the gaps between the recorded requests. Each request is due at its recorded distance
+// from the first request, divided by the speed. It is sent when it is due or when the previous request has completed,
+// whichever is later. Requests recorded without timing are not delayed.
+public class Pacing {
+    private final double speed;
+
+    private Pacing(double speed) {
+        this.speed = speed;
+    }
+
+    // Requests are sent one after the other without gaps. This is the default.
+    public static Pacing none() {
+        return new Pacing(0);
+    }
+
+    public static Pacing recorded() {
+        return new Pacing(1);
+    }
+
+    // A speed of 2 replays twice as fast as recorded, a speed of 0.5 half as fast.
+    public static Pacing scaled(double speed) {
+        if (!(speed > 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException(String.format("Speed must be positive, was %s.", speed));
+        }
+        return new Pacing(speed);
+    }
+
+    Schedule start() {
+        return new Schedule(System.nanoTime());
+    }
+
+    // The due times of one replay.
+    class Schedule {
+        private final long start;
+        private Instant first;
+
+        private Schedule(long start) {
+            this.start = start;
+        }
+
+        // Waits until the request is due and returns the time it has been intended to be sent.
+        // Latencies are measured from there, so a replay falling behind the recorded pace shows in them.
+        long await(RecordedRequest request) throws InterruptedException {
+            ExchangeTiming recorded = request.recorded();
+            if (speed == 0 || recorded == null) {
+                return System.nanoTime();
+            }
+            if (first == null) {
+                first = recorded.timestamp();
+            }
+            long due = start + (long) (Duration.between(first, recorded.timestamp()).toNanos() / speed);
+            TimeUnit.NANOSECONDS.sleep(due - System.nanoTime());
+            return Math.min(due, System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.simkuenzi.webplay.play;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+// Sends the requests of recorded tests. One player shares its connections across all requests of a run.
+public class Player {
+    private final HttpClient httpClient;
+
+    private Player(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public static Player newPlayer() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    HttpClient httpClient() {
+        return httpClient;
+    }
+
+    public static class Builder {
+        private Executor executor;
+        private Duration connectTimeout;
+        private HttpClient.Version version;
+
+        private Builder() {
+        }
+
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder version(HttpClient.Version version) {
+            this.version = version;
+            return this;
+        }
+
+        // Keep-alive timeout and connection pool size are settings of the whole JVM. They are given as the
+        // system properties jdk.httpclient.keepalive.timeout and jdk.httpclient.connectionPoolSize on the command line.
+        public Player build() {
+            HttpClient.Builder builder = HttpClient.newBuilder();
+            if (executor != null) {
+                builder.executor(executor);
+            }
+            if (connectTimeout != null) {
+                builder.connectTimeout(connectTimeout);
+            }
+            if (version != null) {
+                builder.version(version);
+            }
+            return new Player(builder.build());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.simkuenzi.webplay.play;
+
+import java.time.Duration;
+
+// Describes an open-model run. Iterations of the scenario are started at a constant rate,
+// independent of how long the previous ones take.
+public class Rate {
+    private final double perSecond;
+    private final Duration duration;
+    private int maxConcurrency = 256;
+
+    private Rate(double perSecond, Duration duration) {
+        this.perSecond = perSecond;
+        this.duration = duration;
+    }
+
+    public static Rate perSecond(double iterations, Duration duration) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("The rate must be positive.");
+        }
+        if (duration == null || duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("The duration must be positive.");
+        }
+        return new Rate(iterations, duration);
+    }
+
+    // Iterations which are due while all workers are busy wait for a free worker.
+    // The wait counts towards their latency. Iterations still waiting at the end of the duration are missed.
+    public Rate maxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("At least one worker is required.");
+        }
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    double perSecond() {
+        return perSecond;
+    }
+
+    Duration duration() {
+        return duration;
+    }
+
+    int maxConcurrency() {
+        return maxConcurrency;
+    }
+}
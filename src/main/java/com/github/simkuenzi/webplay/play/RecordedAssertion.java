@@ -0,0 +1,57 @@
+package com.github.simkuenzi.webplay.play;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+
+import java.util.stream.Collectors;
+
+class RecordedAssertion {
+    private final String selector;
+    private final Evaluator evaluator;
+    private final String expectedAttrName;
+    private final String expected;
+
+    private RecordedAssertion(String selector, Evaluator evaluator, String expectedAttrName, String expected) {
+        this.selector = selector;
+        this.evaluator = evaluator;
+        this.expectedAttrName = expectedAttrName;
+        this.expected = expected;
+    }
+
+    static RecordedAssertion text(Selectors selectors, String selector, String expectedText) {
+        return new RecordedAssertion(selector, selectors.compile(selector), null, normalizeLines(expectedText));
+    }
+
+    static RecordedAssertion attr(Selectors selectors, String selector, String expectedAttrName, String expectedAttrValue) {
+        return new RecordedAssertion(selector, selectors.compile(selector), expectedAttrName, expectedAttrValue);
+    }
+
+    Evaluator evaluator() {
+        return evaluator;
+    }
+
+    void check(Element actualElement, String messagePrefix, RecordedRequest.AssertionMethod assertionMethod) {
+        if (actualElement == null) {
+            assertionMethod.call(
+                    messagePrefix + String.format("The element %s does not exist, but '%s' is expected.", selector, expected),
+                    expected, null
+            );
+        } else if (expectedAttrName == null) {
+            String actual = normalizeLines(actualElement.text());
+            assertionMethod.call(
+                    messagePrefix + String.format("The element %s does evaluate to '%s', but '%s' is expected.", selector, actual, expected),
+                    expected, actual
+            );
+        } else {
+            String actualValue = actualElement.attr(expectedAttrName);
+            assertionMethod.call(
+                    messagePrefix + String.format("The attribute %s of the element %s does evaluate to '%s', but '%s' is expected.", expectedAttrName, selector, actualValue, expected),
+                    expected, actualValue
+            );
+        }
+    }
+
+    private static String normalizeLines(String text) {
+        return text.lines().collect(Collectors.joining(System.lineSeparator()));
+    }
+}
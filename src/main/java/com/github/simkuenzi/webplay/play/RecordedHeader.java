@@ -0,0 +1,31 @@
+package com.github.simkuenzi.webplay.play;
+
+import java.util.Arrays;
+import java.util.List;
+
+class RecordedHeader {
+    private static final List<String> restrictedHeaders = Arrays.asList("host", "connection", "content-length", "transfer-encoding", "upgrade");
+
+    private final String name;
+    private final String value;
+    private final boolean restricted;
+
+    RecordedHeader(String name, String value) {
+        this.name = name;
+        this.value = value;
+        this.restricted = restrictedHeaders.contains(name.toLowerCase());
+    }
+
+    String name() {
+        return name;
+    }
+
+    String value() {
+        return value;
+    }
+
+    // Restricted headers are set by the HTTP client itself.
+    boolean restricted() {
+        return restricted;
+    }
+}
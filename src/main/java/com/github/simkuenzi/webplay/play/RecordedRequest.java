@@ -1,110 +1,215 @@
 package com.github.simkuenzi.webplay.play;
 
+import com.github.simkuenzi.webplay.record.ExchangeTiming;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
 
 class RecordedRequest {
 
-    private static final List<String> restrictedHeaders = Arrays.asList("host", "connection", "content-length", "upgrade");
-
-    private final XPathFactory factory = XPathFactory.newInstance();
-    private final XPathExpression urlPathExpr = factory.newXPath().compile("@urlPath");
-    private final XPathExpression methodExpr = factory.newXPath().compile("@method");
-    private final XPathExpression payloadExpr = factory.newXPath().compile("payload/text()");
-    private final XPathExpression headerExpr = factory.newXPath().compile("header");
-    private final XPathExpression headerNameExpr = factory.newXPath().compile("@name");
-    private final XPathExpression headerValueExpr = factory.newXPath().compile("@value");
-    private final XPathExpression assertionExpr = factory.newXPath().compile("assertion");
-    private final XPathExpression selectorExpr = factory.newXPath().compile("@selector");
-    private final XPathExpression expectedTextExpr = factory.newXPath().compile("expectedText");
-    private final XPathExpression expectedTextValueExpr = factory.newXPath().compile("text()");
-    private final XPathExpression expectedAttrExpr = factory.newXPath().compile("expectedAttr");
-    private final XPathExpression expectedAttrNameExpr = factory.newXPath().compile("@name");
-    private final XPathExpression expectedAttrValueExpr = factory.newXPath().compile("text()");
-
-    private final Node requestNode;
-
-    public RecordedRequest(Node requestNode) throws Exception {
-        this.requestNode = requestNode;
+    private final String method;
+    private final String urlPath;
+    private final List<RecordedHeader> headers;
+    private final byte[] payload;
+    private final List<RecordedAssertion> assertions;
+    private final List<Evaluator> evaluators;
+    private final int[] evaluatorOfAssertion;
+    private final ExchangeTiming recorded;
+
+    RecordedRequest(String method, String urlPath, List<RecordedHeader> headers, byte[] payload, List<RecordedAssertion> assertions) {
+        this(method, urlPath, headers, payload, assertions, null);
+    }
+
+    RecordedRequest(String method, String urlPath, List<RecordedHeader> headers, byte[] payload, List<RecordedAssertion> assertions, ExchangeTiming recorded) {
+        this.method = method;
+        this.urlPath = urlPath;
+        this.headers = List.copyOf(headers);
+        this.payload = payload;
+        this.assertions = List.copyOf(assertions);
+        this.recorded = recorded;
+
+        // Assertions with the same selector are resolved by the same evaluator.
+        List<Evaluator> evaluators = new ArrayList<>();
+        this.evaluatorOfAssertion = new int[assertions.size()];
+        for (int i = 0; i < assertions.size(); i++) {
+            Evaluator evaluator = assertions.get(i).evaluator();
+            int index = evaluators.indexOf(evaluator);
+            if (index < 0) {
+                index = evaluators.size();
+                evaluators.add(evaluator);
+            }
+            evaluatorOfAssertion[i] = index;
+        }
+        this.evaluators = List.copyOf(evaluators);
     }
 
-    public void play(int requestIndex, String baseUrl, AssertionMethod assertionMethod) throws Exception {
-        HttpClient httpClient = HttpClient.newHttpClient();
-        String method = methodExpr.evaluate(requestNode);
-        String urlPath = urlPathExpr.evaluate(requestNode);
+    String method() {
+        return method;
+    }
+
+    String urlPath() {
+        return urlPath;
+    }
+
+    // Null if the recording has no timing.
+    ExchangeTiming recorded() {
+        return recorded;
+    }
+
+    public RequestTiming play(int requestIndex, String baseUrl, Player player, AssertionMethod assertionMethod) throws Exception {
         HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .method(method, HttpRequest.BodyPublishers.ofString(payloadExpr.evaluate(requestNode)))
+                .method(method, HttpRequest.BodyPublishers.ofByteArray(payload))
                 .uri(new URI(baseUrl + urlPath));
 
-        NodeList headerNodes = (NodeList) headerExpr.evaluate(requestNode, XPathConstants.NODESET);
-        IntStream.range(0, headerNodes.getLength()).mapToObj(headerNodes::item).forEach(headerNode -> {
-            try {
-                String name = headerNameExpr.evaluate(headerNode);
-                if (!restrictedHeaders.contains(name.toLowerCase())) {
-                    requestBuilder.header(
-                            name,
-                            headerValueExpr.evaluate(headerNode)
-                    );
-                }
-            } catch (XPathExpressionException e) {
-                throw new RuntimeException(e);
+        for (RecordedHeader header : headers) {
+            if (!header.restricted()) {
+                requestBuilder.header(header.name(), header.value());
             }
-        });
+        }
 
         HttpRequest httpRequest = requestBuilder.build();
-        HttpResponse<String> httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-
-        Document doc = Jsoup.parse(httpResponse.body());
+        ReplayEvent event = ReplayEvent.start();
+        AtomicLong firstByte = new AtomicLong();
+        AtomicLong responseBytes = new AtomicLong();
+        long start = System.nanoTime();
+        HttpResponse<String> httpResponse = player.httpClient().send(httpRequest, responseInfo -> {
+            firstByte.set(System.nanoTime());
+            // Without assertions, the body is received but neither decoded nor parsed.
+            HttpResponse.BodySubscriber<String> body = assertions.isEmpty()
+                    ? HttpResponse.BodySubscribers.replacing("")
+                    : HttpResponse.BodyHandlers.ofString().apply(responseInfo);
+            // The body is only counted for the flight recorder.
+            return event == null ? body : new CountingSubscriber<>(body, responseBytes);
+        });
+        long received = System.nanoTime();
 
-        String messagePrefix = String.format("Assertion failed for request[%d] - %s %s%n", requestIndex, method, urlPath);
+        try {
+            evaluate(requestIndex, httpResponse.body(), assertionMethod);
+        } finally {
+            if (event != null && event.shouldCommit()) {
+                event.requestIndex = requestIndex;
+                event.method = method;
+                event.urlPath = urlPath;
+                event.status = httpResponse.statusCode();
+                event.requestBytes = payload.length;
+                event.responseBytes = responseBytes.get();
+                event.timeToFirstByte = firstByte.get() - start;
+                event.commit();
+            }
+        }
+        return new RequestTiming(start, firstByte.get(), received, System.nanoTime());
+    }
 
-        NodeList assertions = (NodeList) assertionExpr.evaluate(requestNode, XPathConstants.NODESET);
-        IntStream.range(0, assertions.getLength()).mapToObj(assertions::item).forEach(assertion -> {
+    void evaluate(int requestIndex, String body, AssertionMethod assertionMethod) {
+        if (!assertions.isEmpty()) {
+            AssertionEvent event = AssertionEvent.start();
+            // Failures are only counted while JFR records them.
+            AssertionMethod checked = event == null ? assertionMethod : (message, expected, actual) -> {
+                if (!expected.equals(actual)) {
+                    event.failures++;
+                }
+                assertionMethod.call(message, expected, actual);
+            };
             try {
-                Node expectedText = (Node) expectedTextExpr.evaluate(assertion, XPathConstants.NODE);
-                Node expectedAttr = (Node) expectedAttrExpr.evaluate(assertion, XPathConstants.NODE);
-                String selector = selectorExpr.evaluate(assertion);
-                Element actualElement = doc.selectFirst(selector);
-
-                if (expectedText != null) {
-                    String expected = expectedTextValueExpr.evaluate(expectedText).lines().collect(Collectors.joining(System.lineSeparator()));
-                    String actual = actualElement.text().lines().collect(Collectors.joining(System.lineSeparator()));
-                    assertionMethod.call(
-                            messagePrefix + String.format("The element %s does evaluate to '%s', but '%s' is expected.", selector, actual, expected),
-                            expected, actual
-                    );
-                } else if (expectedAttr != null) {
-                    String expected = expectedAttrValueExpr.evaluate(expectedAttr);
-                    String attrName = expectedAttrNameExpr.evaluate(expectedAttr);
-                    String actualValue = actualElement.attr(attrName);
-                    assertionMethod.call(
-                            messagePrefix + String.format("The attribute %s of the element %s does evaluate to '%s', but '%s' is expected.", attrName, selector, actualValue, expected),
-                            expected, actualValue
-                    );
+                Element[] selected = select(Jsoup.parse(body));
+                String messagePrefix = String.format("Assertion failed for request[%d] - %s %s%n", requestIndex, method, urlPath);
+                for (int i = 0; i < assertions.size(); i++) {
+                    assertions.get(i).check(selected[evaluatorOfAssertion[i]], messagePrefix, checked);
+                }
+            } finally {
+                if (event != null && event.shouldCommit()) {
+                    event.requestIndex = requestIndex;
+                    event.method = method;
+                    event.urlPath = urlPath;
+                    event.assertions = assertions.size();
+                    event.bodyLength = body.length();
+                    event.commit();
                 }
-            } catch (XPathExpressionException e) {
-                throw new RuntimeException(e);
             }
-        });
+        }
+    }
+
+    // Finds the first matching element of every evaluator in a single pass over the document.
+    private Element[] select(Document doc) {
+        Element[] selected = new Element[evaluators.size()];
+        NodeTraversor.filter(new NodeFilter() {
+            private int remaining = selected.length;
+
+            @Override
+            public FilterResult head(Node node, int depth) {
+                if (node instanceof Element) {
+                    for (int i = 0; i < selected.length; i++) {
+                        if (selected[i] == null && evaluators.get(i).matches(doc, (Element) node)) {
+                            selected[i] = (Element) node;
+                            remaining--;
+                        }
+                    }
+                }
+                return remaining == 0 ? FilterResult.STOP : FilterResult.CONTINUE;
+            }
+
+            @Override
+            public FilterResult tail(Node node, int depth) {
+                return FilterResult.CONTINUE;
+            }
+        }, doc);
+        return selected;
     }
 
     public interface AssertionMethod {
         void call(String message, String expected, String actual);
     }
+
+    // Counts the bytes of a body as they arrive, whether it has a Content-Length, is chunked or ends with the connection.
+    private static class CountingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> body;
+        private final AtomicLong count;
+
+        private CountingSubscriber(HttpResponse.BodySubscriber<T> body, AtomicLong count) {
+            this.body = body;
+            this.count = count;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return body.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            body.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            for (ByteBuffer buffer : item) {
+                count.addAndGet(buffer.remaining());
+            }
+            body.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.onComplete();
+        }
+    }
 }
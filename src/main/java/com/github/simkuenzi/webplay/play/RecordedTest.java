@@ -1,50 +1,126 @@
 package com.github.simkuenzi.webplay.play;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.regex.Pattern;
 
 public class RecordedTest {
     private final URL testFile;
+    private final RequestSelection selection;
+    private final Pacing pacing;
+    private Scenario scenario;
 
     public RecordedTest(Path testFile) throws MalformedURLException {
         this(testFile.toUri().toURL()) ;
     }
 
     public RecordedTest(URL testFile) {
+        this(testFile, null, Pacing.none());
+    }
+
+    private RecordedTest(URL testFile, RequestSelection selection, Pacing pacing) {
         this.testFile = testFile;
+        this.selection = selection;
+        this.pacing = pacing;
+    }
+
+    // The pace of play and playStreaming. Load runs are not paced.
+    public RecordedTest pacing(Pacing pacing) {
+        return new RecordedTest(testFile, selection, pacing);
+    }
+
+    // The requests from fromIndex, inclusive, to toIndex, exclusive. Indexes count all requests of the recording,
+    // while reports and assertion messages of a subset count its own requests.
+    public RecordedTest subset(int fromIndex, int toIndex) {
+        return subset((index, urlPath) -> index >= fromIndex && index < toIndex);
+    }
+
+    // The requests whose urlPath contains a match of the pattern.
+    public RecordedTest subset(Pattern urlPathPattern) {
+        return subset((index, urlPath) -> urlPathPattern.matcher(urlPath).find());
+    }
+
+    private RecordedTest subset(RequestSelection selection) {
+        return new RecordedTest(testFile, this.selection == null ? selection : this.selection.and(selection), pacing);
+    }
+
+    public Report play(String baseUrl, RecordedRequest.AssertionMethod assertionMethod) throws Exception {
+        return play(baseUrl, Player.newPlayer(), assertionMethod);
     }
 
-    public void play(String baseUrl, RecordedRequest.AssertionMethod assertionMethod) throws Exception {
-        for (int i = 0; i < requests().size(); i++) {
-            requests().get(i).play(i, baseUrl, assertionMethod);
+    // Returns the timings of all requests. They can be exported with Report.writeJson or Report.writeCsv.
+    public Report play(String baseUrl, Player player, RecordedRequest.AssertionMethod assertionMethod) throws Exception {
+        List<RecordedRequest> requests = scenario().requests();
+        List<StepStatistics> steps = new ArrayList<>();
+        long start = System.nanoTime();
+        Pacing.Schedule schedule = pacing.start();
+        for (int i = 0; i < requests.size(); i++) {
+            RecordedRequest request = requests.get(i);
+            StepStatistics step = new StepStatistics(i, request);
+            long intendedStart = schedule.await(request);
+            RequestTiming timing = request.play(i, baseUrl, player, (message, expected, actual) -> {
+                if (!expected.equals(actual)) {
+                    step.failed();
+                }
+                assertionMethod.call(message, expected, actual);
+            });
+            step.record(timing, intendedStart);
+            steps.add(step);
         }
+        return new Report(steps, Duration.ofNanos(System.nanoTime() - start), 1);
     }
 
-    private List<RecordedRequest> requests() throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        try (InputStream in = testFile.openStream()) {
-            Document document = builder.parse(in);
-            NodeList testNodes = document.getDocumentElement().getElementsByTagName("request");
-            return IntStream.range(0, testNodes.getLength())
-                    .mapToObj(i -> {
-                        try {
-                            return new RecordedRequest(testNodes.item(i));
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
-                        }
-                    })
-                    .collect(Collectors.toList());
+    // Plays each request as soon as it is read. Memory use does not grow with the length of the scenario,
+    // but the file is read again on every call.
+    public void playStreaming(String baseUrl, RecordedRequest.AssertionMethod assertionMethod) throws Exception {
+        playStreaming(baseUrl, Player.newPlayer(), assertionMethod);
+    }
+
+    public void playStreaming(String baseUrl, Player player, RecordedRequest.AssertionMethod assertionMethod) throws Exception {
+        try (ScenarioReader reader = reader()) {
+            Pacing.Schedule schedule = pacing.start();
+            RecordedRequest request;
+            for (int i = 0; (request = reader.next()) != null; i++) {
+                schedule.await(request);
+                request.play(i, baseUrl, player, assertionMethod);
+            }
+        }
+    }
+
+    // Replays the scenario with concurrent virtual users. Assertion failures are counted instead of thrown.
+    public Report load(String baseUrl, Player player, Load load) throws Exception {
+        return new LoadRun(scenario(), baseUrl, player, load).run();
+    }
+
+    // Starts iterations of the scenario at a constant rate, regardless of response times.
+    public ArrivalReport load(String baseUrl, Player player, Rate rate) throws Exception {
+        return new ArrivalRun(scenario(), baseUrl, player, rate).run();
+    }
+
+    private synchronized Scenario scenario() throws Exception {
+        if (scenario == null) {
+            scenario = Scenario.read(reader());
+        }
+        return scenario;
+    }
+
+    // A subset of an uncompressed XML file is read from the positions of its requests, given by an index.
+    // Other recordings are read completely.
+    private ScenarioReader reader() throws Exception {
+        if (selection == null) {
+            return new ScenarioReader(testFile.openStream());
+        }
+        if (testFile.getProtocol().equals("file")) {
+            Path path = Path.of(testFile.toURI());
+            ScenarioIndex index = ScenarioIndex.of(path);
+            if (index != null) {
+                return new ScenarioReader(index.open(path, selection));
+            }
         }
+        return new ScenarioReader(testFile.openStream(), selection);
     }
 }
@@ -0,0 +1,53 @@
+package com.github.simkuenzi.webplay.play;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// One replayed request, from sending it until its assertions are evaluated.
+@Name("com.github.simkuenzi.webplay.Replay")
+@Label("Replayed Request")
+@Category({"WebPlay", "Replay"})
+class ReplayEvent extends Event {
+    // Only asked whether the event is enabled. Without a recording, no event is allocated.
+    private static final ReplayEvent TYPE = new ReplayEvent();
+
+    @Label("Request Index")
+    int requestIndex;
+
+    @Label("Method")
+    String method;
+
+    @Label("URL Path")
+    String urlPath;
+
+    @Label("Status")
+    int status;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Size")
+    @Description("Bytes of the response body as received, without the transfer encoding.")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Time to First Byte")
+    @Timespan
+    long timeToFirstByte;
+
+    // Null if JFR does not record the event.
+    static ReplayEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        ReplayEvent event = new ReplayEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.stats.Histogram;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class Report {
+    private final List<StepStatistics> steps;
+    private final Duration elapsed;
+    private final long iterations;
+
+    Report(List<StepStatistics> steps, Duration elapsed, long iterations) {
+        this.steps = List.copyOf(steps);
+        this.elapsed = elapsed;
+        this.iterations = iterations;
+    }
+
+    public List<StepStatistics> steps() {
+        return steps;
+    }
+
+    public Duration elapsed() {
+        return elapsed;
+    }
+
+    public long iterations() {
+        return iterations;
+    }
+
+    // Replayed requests per second.
+    public double throughput() {
+        return throughput(steps.stream().mapToLong(s -> s.latency().count()).sum());
+    }
+
+    public double throughput(StepStatistics step) {
+        return throughput(step.latency().count());
+    }
+
+    // Percentiles of all steps in milliseconds as JSON.
+    public void writeJson(Writer out) throws IOException {
+        out.write(String.format(Locale.ROOT, "{\"elapsedMillis\":%.3f,\"iterations\":%d,\"requestsPerSecond\":%.3f,\"steps\":[",
+                millis(elapsed.toNanos()), iterations, throughput()));
+        for (int i = 0; i < steps.size(); i++) {
+            StepStatistics step = steps.get(i);
+            out.write(String.format(Locale.ROOT, "%s%n{\"index\":%d,\"method\":%s,\"urlPath\":%s,\"count\":%d,\"failures\":%d,\"errors\":%d",
+                    i == 0 ? "" : ",", step.index(), jsonString(step.method()), jsonString(step.urlPath()),
+                    step.latency().count(), step.failures(), step.errors()));
+            for (Map.Entry<String, Histogram> phase : phases(step).entrySet()) {
+                Histogram histogram = phase.getValue();
+                out.write(String.format(Locale.ROOT, ",\"%s\":{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                        phase.getKey(), millis(histogram.percentile(50)), millis(histogram.percentile(90)),
+                        millis(histogram.percentile(99)), millis(histogram.max())));
+            }
+            out.write("}");
+        }
+        out.write(String.format("%n]}%n"));
+        out.flush();
+    }
+
+    // Percentiles of all steps in milliseconds as CSV, one line per step and phase.
+    public void writeCsv(Writer out) throws IOException {
+        out.write(String.format("index,method,urlPath,phase,count,failures,errors,p50,p90,p99,max%n"));
+        for (StepStatistics step : steps) {
+            for (Map.Entry<String, Histogram> phase : phases(step).entrySet()) {
+                Histogram histogram = phase.getValue();
+                out.write(String.format(Locale.ROOT, "%d,%s,%s,%s,%d,%d,%d,%.3f,%.3f,%.3f,%.3f%n",
+                        step.index(), csvString(step.method()), csvString(step.urlPath()), phase.getKey(),
+                        histogram.count(), step.failures(), step.errors(), millis(histogram.percentile(50)),
+                        millis(histogram.percentile(90)), millis(histogram.percentile(99)), millis(histogram.max())));
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d iterations in %.3f s, %.1f requests/s%n", iterations, seconds(), throughput()));
+        out.append(String.format("%5s %-40s %8s %8s %8s %10s %10s %10s %10s%n",
+                "#", "request", "count", "failed", "errors", "req/s", "p50 ms", "p99 ms", "max ms"));
+        for (StepStatistics step : steps) {
+            out.append(String.format("%5d %-40s %8d %8d %8d %10.1f %10.3f %10.3f %10.3f%n",
+                    step.index(), step.method() + " " + step.urlPath(), step.latency().count(), step.failures(), step.errors(),
+                    throughput(step), millis(step.latency().percentile(50)), millis(step.latency().percentile(99)), millis(step.latency().max())));
+        }
+        return out.toString();
+    }
+
+    private double throughput(long count) {
+        return seconds() > 0 ? count / seconds() : 0;
+    }
+
+    private double seconds() {
+        return elapsed.toNanos() / 1e9;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Map<String, Histogram> phases(StepStatistics step) {
+        Map<String, Histogram> phases = new LinkedHashMap<>();
+        phases.put("latency", step.latency());
+        phases.put("timeToFirstByte", step.timeToFirstByte());
+        phases.put("body", step.body());
+        phases.put("assertions", step.assertions());
+        // Recorded timings are only reported for recordings which have them.
+        if (step.recordedTimeToFirstByte().count() > 0) {
+            phases.put("recordedTimeToFirstByte", step.recordedTimeToFirstByte());
+            phases.put("recordedResponseTime", step.recordedResponseTime());
+        }
+        return phases;
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static String csvString(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,10 @@
+package com.github.simkuenzi.webplay.play;
+
+// Chooses requests of a recording by their index in the whole recording and their urlPath.
+interface RequestSelection {
+    boolean includes(int index, String urlPath);
+
+    default RequestSelection and(RequestSelection other) {
+        return (index, urlPath) -> includes(index, urlPath) && other.includes(index, urlPath);
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.simkuenzi.webplay.play;
+
+// Points in time of one replayed request in nanoseconds.
+// The JDK HTTP client does not expose connection setup, so it is part of the time to first byte.
+class RequestTiming {
+    private final long start;
+    private final long firstByte;
+    private final long received;
+    private final long evaluated;
+
+    RequestTiming(long start, long firstByte, long received, long evaluated) {
+        this.start = start;
+        this.firstByte = firstByte;
+        this.received = received;
+        this.evaluated = evaluated;
+    }
+
+    long timeToFirstByte() {
+        return firstByte - start;
+    }
+
+    long body() {
+        return received - firstByte;
+    }
+
+    long assertions() {
+        return evaluated - received;
+    }
+
+    long end() {
+        return evaluated;
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.simkuenzi.webplay.play;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+abstract class Run {
+    final List<RecordedRequest> requests;
+    final List<StepStatistics> steps;
+    final AtomicLong iterations = new AtomicLong();
+    private final String baseUrl;
+    private final Player player;
+
+    Run(Scenario scenario, String baseUrl, Player player) {
+        this.requests = scenario.requests();
+        this.baseUrl = baseUrl;
+        this.player = player;
+        this.steps = IntStream.range(0, requests.size())
+                .mapToObj(i -> new StepStatistics(i, requests.get(i)))
+                .collect(Collectors.toList());
+    }
+
+    // Plays one request and records its latency measured from the time it was intended to be sent.
+    // Returns the time the request has completed.
+    long step(int index, long intendedStart) throws InterruptedException {
+        StepStatistics step = steps.get(index);
+        try {
+            RequestTiming timing = requests.get(index).play(index, baseUrl, player, (message, expected, actual) -> {
+                if (!expected.equals(actual)) {
+                    step.failed();
+                }
+            });
+            step.record(timing, intendedStart);
+            return timing.end();
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            step.error();
+            return System.nanoTime();
+        }
+    }
+}
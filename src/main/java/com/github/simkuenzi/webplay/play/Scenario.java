@@ -0,0 +1,33 @@
+package com.github.simkuenzi.webplay.play;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Immutable model of a recorded test. It is parsed once and can be played any number of times.
+class Scenario {
+    private final List<RecordedRequest> requests;
+
+    Scenario(List<RecordedRequest> requests) {
+        this.requests = List.copyOf(requests);
+    }
+
+    static Scenario parse(InputStream in) throws Exception {
+        return read(new ScenarioReader(in));
+    }
+
+    static Scenario read(ScenarioReader scenarioReader) throws Exception {
+        List<RecordedRequest> requests = new ArrayList<>();
+        try (ScenarioReader reader = scenarioReader) {
+            RecordedRequest request;
+            while ((request = reader.next()) != null) {
+                requests.add(request);
+            }
+        }
+        return new Scenario(requests);
+    }
+
+    List<RecordedRequest> requests() {
+        return requests;
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.record.AssertionBuilder;
+import com.github.simkuenzi.webplay.record.BinaryTest;
+import com.github.simkuenzi.webplay.record.RequestBuilder;
+import com.github.simkuenzi.webplay.record.Test;
+import com.github.simkuenzi.webplay.record.XmlTest;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+// Converts recordings between the XML and the binary format without losing anything.
+// The format of the recording read is detected, so it may already be in the target format.
+// Targets named *.gz are compressed.
+public class ScenarioConverter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static void toBinary(Path from, Path to) throws Exception {
+        try (InputStream in = Files.newInputStream(from); OutputStream out = new BufferedOutputStream(open(to))) {
+            copy(in, new BinaryTest(out));
+        }
+    }
+
+    public static void toXml(Path from, Path to) throws Exception {
+        try (InputStream in = Files.newInputStream(from); Writer out = new BufferedWriter(new OutputStreamWriter(open(to), StandardCharsets.UTF_8))) {
+            copy(in, new XmlTest(out));
+        }
+    }
+
+    private static OutputStream open(Path to) throws IOException {
+        OutputStream out = Files.newOutputStream(to);
+        return to.getFileName().toString().endsWith(".gz") ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+    }
+
+    private static void copy(InputStream in, Test test) throws Exception {
+        try (ScenarioSource source = ScenarioReader.open(in)) {
+            RequestBuilder requestBuilder = test.test();
+            AssertionBuilder assertionBuilder;
+            while ((assertionBuilder = source.next(requestBuilder)) != null) {
+                requestBuilder = assertionBuilder;
+            }
+            requestBuilder.end();
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.record.BinaryFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Byte ranges of the requests in an uncompressed XML recording, read from the index file written by the recorder.
+// The format is described in IndexWriter. A missing or stale index is rebuilt by scanning the recording once.
+class ScenarioIndex {
+    private static final String HEADER = "webplay-index 1";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<Element> requests;
+    private final Map<String, Element> headerSets;
+    private final long length;
+
+    private ScenarioIndex(List<Element> requests, Map<String, Element> headerSets, long length) {
+        this.requests = requests;
+        this.headerSets = headerSets;
+        this.length = length;
+    }
+
+    // Returns null if the recording is compressed or binary, or has attributes the scan cannot decode.
+    // Such recordings are read completely.
+    static ScenarioIndex of(Path recording) throws IOException {
+        if (!plainXml(recording)) {
+            return null;
+        }
+        Path indexFile = recording.resolveSibling(recording.getFileName() + ".idx");
+        ScenarioIndex index = read(recording, indexFile);
+        if (index == null) {
+            try {
+                index = scan(recording);
+            } catch (IllegalArgumentException e) {
+                // Unknown entities and invalid character references
+                return null;
+            }
+            try {
+                index.write(indexFile);
+            } catch (IOException e) {
+                // The index is used from memory if it cannot be stored.
+            }
+        }
+        return index;
+    }
+
+    // A document made of the selected requests and the headers they refer to, read from their positions in the file.
+    // Requests following each other are read in one piece.
+    InputStream open(Path recording, RequestSelection selection) throws IOException {
+        FileChannel channel = FileChannel.open(recording, StandardOpenOption.READ);
+        try {
+            return open(channel, selection);
+        } catch (Throwable e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private InputStream open(FileChannel channel, RequestSelection selection) {
+        Map<Long, Element> sets = new TreeMap<>();
+        List<InputStream> ranges = new ArrayList<>();
+        long rangeStart = -1;
+        long rangeEnd = -1;
+        int last = -2;
+        for (int i = 0; i < requests.size(); i++) {
+            Element request = requests.get(i);
+            if (selection.includes(i, request.urlPath)) {
+                Element set = request.id != null ? headerSets.get(request.id) : null;
+                if (set != null) {
+                    sets.put(set.offset, set);
+                }
+                if (last != i - 1) {
+                    addRange(ranges, channel, rangeStart, rangeEnd);
+                    rangeStart = request.offset;
+                }
+                rangeEnd = request.offset + request.length;
+                last = i;
+            }
+        }
+        addRange(ranges, channel, rangeStart, rangeEnd);
+
+        List<InputStream> parts = new ArrayList<>();
+        parts.add(new ByteArrayInputStream("<test>".getBytes(StandardCharsets.UTF_8)));
+        for (Element set : sets.values()) {
+            parts.add(new RangeInputStream(channel, set.offset, set.offset + set.length));
+        }
+        parts.addAll(ranges);
+        parts.add(new ByteArrayInputStream("</test>".getBytes(StandardCharsets.UTF_8)));
+        return new SequenceInputStream(Collections.enumeration(parts)) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                channel.close();
+            }
+        };
+    }
+
+    private static void addRange(List<InputStream> ranges, FileChannel channel, long start, long end) {
+        if (start >= 0) {
+            ranges.add(new RangeInputStream(channel, start, end));
+        }
+    }
+
+    private static boolean plainXml(Path recording) throws IOException {
+        try (InputStream in = Files.newInputStream(recording)) {
+            byte[] start = in.readNBytes(BinaryFormat.MAGIC_LENGTH);
+            return start.length > 0 && start[0] != 0x1f && !BinaryFormat.hasMagic(start);
+        }
+    }
+
+    // The index is stale if the recording has changed after it has been written.
+    private static ScenarioIndex read(Path recording, Path indexFile) throws IOException {
+        if (!Files.exists(indexFile) || Files.getLastModifiedTime(indexFile).compareTo(Files.getLastModifiedTime(recording)) < 0) {
+            return null;
+        }
+        List<Element> requests = new ArrayList<>();
+        Map<String, Element> headerSets = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return null;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ", 5);
+                switch (fields[0]) {
+                    case "headers":
+                        headerSets.put(fields[1], new Element(Long.parseLong(fields[2]), Long.parseLong(fields[3]), fields[1], null));
+                        break;
+                    case "request":
+                        requests.add(new Element(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                                fields[3].equals("-") ? null : fields[3], fields[4]));
+                        break;
+                    case "end":
+                        long length = Long.parseLong(fields[1]);
+                        return length == Files.size(recording) ? new ScenarioIndex(requests, headerSets, length) : null;
+                    default:
+                        return null;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            // Rebuilt
+        }
+        return null;
+    }
+
+    private void write(Path indexFile) throws IOException {
+        try (Writer out = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+            out.write(HEADER + "\n");
+            for (Element set : headerSets.values()) {
+                out.write(String.format("headers %s %d %d%n", set.id, set.offset, set.length));
+            }
+            for (Element request : requests) {
+                out.write(String.format("request %d %d %s %s%n", request.offset, request.length,
+                        request.id == null ? "-" : request.id, request.urlPath));
+            }
+            out.write(String.format("end %d%n", length));
+        }
+    }
+
+    // Finds the children of the root element without parsing their content. Characters outside of markup
+    // are never '<', and multi-byte UTF-8 characters contain no ASCII bytes, so the bytes are scanned as they are.
+    // An element which is cut off at the end of the file is left out.
+    private static ScenarioIndex scan(Path recording) throws IOException {
+        List<Element> requests = new ArrayList<>();
+        Map<String, Element> headerSets = new HashMap<>();
+        try (Scanner scanner = new Scanner(new BufferedInputStream(Files.newInputStream(recording), BUFFER_SIZE))) {
+            int depth = 0;
+            long start = -1;
+            Map<String, String> attributes = null;
+            String name = null;
+            int b;
+            while ((b = scanner.read()) >= 0) {
+                if (b != '<') {
+                    continue;
+                }
+                long tagStart = scanner.position - 1;
+                int next = scanner.read();
+                boolean closed;
+                if (next == '?') {
+                    scanner.skipPast("?>");
+                    continue;
+                } else if (next == '!') {
+                    scanner.skipDeclaration();
+                    continue;
+                } else if (next == '/') {
+                    scanner.skipPast(">");
+                    depth--;
+                    closed = true;
+                } else {
+                    Map<String, String> tagAttributes = new HashMap<>();
+                    String tagName = scanner.readTag(next, tagAttributes);
+                    if (depth == 1) {
+                        start = tagStart;
+                        name = tagName;
+                        attributes = tagAttributes;
+                    }
+                    closed = scanner.emptyElement;
+                    if (!closed) {
+                        depth++;
+                    }
+                }
+                if (closed && depth == 1 && start >= 0) {
+                    long length = scanner.position - start;
+                    if (name.equals("request")) {
+                        requests.add(new Element(start, length, attributes.get("headers"), attributes.getOrDefault("urlPath", "")));
+                    } else if (name.equals("headers")) {
+                        headerSets.put(attributes.get("id"), new Element(start, length, attributes.get("id"), null));
+                    }
+                    start = -1;
+                }
+            }
+            return new ScenarioIndex(requests, headerSets, scanner.position);
+        }
+    }
+
+    private static class Element {
+        private final long offset;
+        private final long length;
+        // The id of a set of headers, or the set a request refers to.
+        private final String id;
+        private final String urlPath;
+
+        private Element(long offset, long length, String id, String urlPath) {
+            this.offset = offset;
+            this.length = length;
+            this.id = id;
+            this.urlPath = urlPath;
+        }
+    }
+
+    private static class Scanner implements AutoCloseable {
+        private final InputStream in;
+        private long position;
+        private boolean emptyElement;
+
+        private Scanner(InputStream in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        // Comments, CDATA sections and document types, after "<!".
+        private void skipDeclaration() throws IOException {
+            int b = read();
+            if (b == '-') {
+                skipPast("-->");
+            } else if (b == '[') {
+                skipPast("]]>");
+            } else {
+                skipPast(">");
+            }
+        }
+
+        private void skipPast(String end) throws IOException {
+            int[] window = new int[end.length()];
+            int b;
+            while ((b = read()) >= 0) {
+                System.arraycopy(window, 1, window, 0, window.length - 1);
+                window[window.length - 1] = b;
+                boolean found = true;
+                for (int i = 0; found && i < window.length; i++) {
+                    found = window[i] == end.charAt(i);
+                }
+                if (found) {
+                    return;
+                }
+            }
+        }
+
+        // Reads a start tag up to its closing '>' and returns its name.
+        private String readTag(int first, Map<String, String> attributes) throws IOException {
+            ByteArrayOutputStream name = new ByteArrayOutputStream();
+            int b = first;
+            while (b >= 0 && b != '>' && b != '/' && !Character.isWhitespace(b)) {
+                name.write(b);
+                b = read();
+            }
+            emptyElement = false;
+            ByteArrayOutputStream attributeName = new ByteArrayOutputStream();
+            while (b >= 0 && b != '>') {
+                if (b == '/') {
+                    emptyElement = true;
+                } else if (b == '"' || b == '\'') {
+                    int quote = b;
+                    ByteArrayOutputStream value = new ByteArrayOutputStream();
+                    while ((b = read()) >= 0 && b != quote) {
+                        value.write(b);
+                    }
+                    attributes.put(attributeName.toString(StandardCharsets.UTF_8).replace("=", "").trim(),
+                            unescape(value.toString(StandardCharsets.UTF_8)));
+                    attributeName.reset();
+                } else {
+                    emptyElement = false;
+                    attributeName.write(b);
+                }
+                b = read();
+            }
+            return name.toString(StandardCharsets.UTF_8);
+        }
+
+        private static String unescape(String value) {
+            StringBuilder unescaped = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                int end = c == '&' ? value.indexOf(';', i) : -1;
+                if (end < 0) {
+                    // Line breaks and tabs are normalized, like XML parsers do.
+                    unescaped.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+                    continue;
+                }
+                String entity = value.substring(i + 1, end);
+                switch (entity) {
+                    case "lt":
+                        unescaped.append('<');
+                        break;
+                    case "gt":
+                        unescaped.append('>');
+                        break;
+                    case "amp":
+                        unescaped.append('&');
+                        break;
+                    case "quot":
+                        unescaped.append('"');
+                        break;
+                    case "apos":
+                        unescaped.append('\'');
+                        break;
+                    default:
+                        unescaped.appendCodePoint(entity.startsWith("#x")
+                                ? Integer.parseInt(entity.substring(2), 16)
+                                : Integer.parseInt(entity.substring(1)));
+                }
+                i = end;
+            }
+            return unescaped.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Reads a part of the file at its position, without moving the position of the channel.
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        private RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (read < 0) {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.record.AssertionBuilder;
+import com.github.simkuenzi.webplay.record.BinaryFormat;
+import com.github.simkuenzi.webplay.record.ExchangeTiming;
+import com.github.simkuenzi.webplay.record.Headers;
+import com.github.simkuenzi.webplay.record.Payload;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// Reads the requests of a recorded test one at a time. Only the current request is held in memory.
+class ScenarioReader implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final ScenarioSource source;
+    private final RequestSelection selection;
+    private final Collector collector = new Collector();
+    private int index;
+
+    ScenarioReader(InputStream in) throws Exception {
+        this(in, null);
+    }
+
+    // Only the selected requests are returned, if there is a selection.
+    ScenarioReader(InputStream in, RequestSelection selection) throws Exception {
+        this.in = in;
+        try {
+            this.source = open(in);
+        } catch (Exception e) {
+            in.close();
+            throw e;
+        }
+        this.selection = selection;
+    }
+
+    // Recordings in the binary format are told apart from XML by their first bytes, compressed ones as well.
+    static ScenarioSource open(InputStream in) throws Exception {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(BinaryFormat.MAGIC_LENGTH);
+        byte[] start = buffered.readNBytes(BinaryFormat.MAGIC_LENGTH);
+        buffered.reset();
+        if (start.length >= 2 && (start[0] & 0xff | (start[1] & 0xff) << 8) == GZIPInputStream.GZIP_MAGIC) {
+            return open(new TruncatedGzipInputStream(buffered));
+        }
+        return BinaryFormat.hasMagic(start) ? new BinaryScenarioSource(buffered) : new XmlScenarioSource(buffered);
+    }
+
+    // Returns null at the end of the scenario.
+    RecordedRequest next() throws Exception {
+        while (source.next(collector) != null) {
+            RecordedRequest request = collector.request();
+            if (selection == null || selection.includes(index++, request.urlPath())) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            in.close();
+        }
+    }
+
+    // Prepares the request read last for replay.
+    private static class Collector implements AssertionBuilder {
+        private static final Pattern CHARSET_PATTERN = Pattern.compile(";\\s*charset=\"?([^\\s;\"]+)", Pattern.CASE_INSENSITIVE);
+
+        private final Selectors selectors = new Selectors();
+        // Requests referring to the same set of headers get the same list. Headers are compared by identity,
+        // sets which are no longer referenced by the source are dropped.
+        private final Map<Headers, List<RecordedHeader>> recordedHeaders = new WeakHashMap<>();
+        private String method;
+        private String urlPath;
+        private List<RecordedHeader> headers;
+        private byte[] payload;
+        private List<RecordedAssertion> assertions;
+        private ExchangeTiming timing;
+
+        @Override
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload) {
+            return request(urlPath, method, headers, payload, null);
+        }
+
+        @Override
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload, ExchangeTiming timing) {
+            this.method = method;
+            this.urlPath = urlPath;
+            this.headers = recordedHeaders.computeIfAbsent(headers, Collector::recorded);
+            // Text is sent in the charset the recorded request declared.
+            this.payload = payload.binary() ? payload.bytes() : payload.text().getBytes(charset(headers));
+            this.assertions = new ArrayList<>();
+            this.timing = timing;
+            return this;
+        }
+
+        @Override
+        public AssertionBuilder assertion(String expectedAttrName, String expectedAttrValue, String selector) {
+            assertions.add(RecordedAssertion.attr(selectors, selector, expectedAttrName, expectedAttrValue));
+            return this;
+        }
+
+        @Override
+        public AssertionBuilder assertion(String expectedText, String selector) {
+            assertions.add(RecordedAssertion.text(selectors, selector, expectedText));
+            return this;
+        }
+
+        @Override
+        public void end() {
+        }
+
+        private RecordedRequest request() {
+            return new RecordedRequest(method, urlPath, headers, payload, assertions, timing);
+        }
+
+        private static List<RecordedHeader> recorded(Headers headers) {
+            List<RecordedHeader> recorded = new ArrayList<>(headers.size());
+            for (Headers.Header header : headers) {
+                recorded.add(new RecordedHeader(header.name(), header.value()));
+            }
+            return List.copyOf(recorded);
+        }
+
+        private static Charset charset(Headers headers) {
+            String contentType = headers.get("Content-Type");
+            if (contentType != null) {
+                Matcher matcher = CHARSET_PATTERN.matcher(contentType);
+                if (matcher.find()) {
+                    try {
+                        return Charset.forName(matcher.group(1));
+                    } catch (IllegalArgumentException e) {
+                        // Unknown charsets are sent as UTF-8, like the recorder decoded them.
+                    }
+                }
+            }
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    // A recording which has been interrupted was compressed up to its last flush. What follows is cut off.
+    private static class TruncatedGzipInputStream extends GZIPInputStream {
+        private TruncatedGzipInputStream(InputStream in) throws IOException {
+            super(in, BUFFER_SIZE);
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            try {
+                return super.read(buf, off, len);
+            } catch (EOFException e) {
+                return -1;
+            }
+        }
+    }
+}
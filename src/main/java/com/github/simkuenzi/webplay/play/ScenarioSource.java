@@ -0,0 +1,17 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.record.AssertionBuilder;
+import com.github.simkuenzi.webplay.record.RequestBuilder;
+
+import java.io.IOException;
+
+// A stored recording, read one request at a time. The requests are passed to the builders the recorder writes with,
+// so a recording can be read into any format.
+interface ScenarioSource extends AutoCloseable {
+    // Passes the next request and its assertions to the builder.
+    // Returns the builder for the following request, or null at the end of the scenario.
+    AssertionBuilder next(RequestBuilder requestBuilder) throws Exception;
+
+    @Override
+    void close() throws IOException;
+}
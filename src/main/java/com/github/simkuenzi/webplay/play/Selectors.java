@@ -0,0 +1,16 @@
+package com.github.simkuenzi.webplay.play;
+
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Compiles each distinct selector of a scenario once. Assertions with the same selector share the evaluator.
+class Selectors {
+    private final Map<String, Evaluator> evaluators = new HashMap<>();
+
+    Evaluator compile(String selector) {
+        return evaluators.computeIfAbsent(selector, QueryParser::parse);
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.record.ExchangeTiming;
+import com.github.simkuenzi.webplay.stats.Histogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Measurements of one recorded request, collected over all its replays.
+public class StepStatistics {
+    private final int index;
+    private final String method;
+    private final String urlPath;
+    private final Histogram latency = new Histogram();
+    private final Histogram timeToFirstByte = new Histogram();
+    private final Histogram body = new Histogram();
+    private final Histogram assertions = new Histogram();
+    private final Histogram recordedTimeToFirstByte = new Histogram();
+    private final Histogram recordedResponseTime = new Histogram();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    StepStatistics(int index, RecordedRequest request) {
+        this.index = index;
+        this.method = request.method();
+        this.urlPath = request.urlPath();
+        ExchangeTiming recorded = request.recorded();
+        if (recorded != null) {
+            recordedTimeToFirstByte.record(recorded.timeToFirstByte().toNanos());
+            recordedResponseTime.record(recorded.responseTime().toNanos());
+        }
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public String urlPath() {
+        return urlPath;
+    }
+
+    // Latency in nanoseconds.
+    public Histogram latency() {
+        return latency;
+    }
+
+    // Time from sending the request until the response headers arrive in nanoseconds.
+    public Histogram timeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    // Time from the response headers until the full body has arrived in nanoseconds.
+    public Histogram body() {
+        return body;
+    }
+
+    // Time to evaluate the assertions in nanoseconds.
+    public Histogram assertions() {
+        return assertions;
+    }
+
+    // Time to first byte of the recorded exchange in nanoseconds. Empty if the recording has no timing.
+    public Histogram recordedTimeToFirstByte() {
+        return recordedTimeToFirstByte;
+    }
+
+    // Time until the recorded response was complete in nanoseconds. Empty if the recording has no timing.
+    public Histogram recordedResponseTime() {
+        return recordedResponseTime;
+    }
+
+    // Number of failed assertions.
+    public long failures() {
+        return failures.sum();
+    }
+
+    // Number of replays which did not get a response.
+    public long errors() {
+        return errors.sum();
+    }
+
+    void record(RequestTiming timing, long intendedStart) {
+        latency.record(timing.end() - intendedStart);
+        timeToFirstByte.record(timing.timeToFirstByte());
+        body.record(timing.body());
+        assertions.record(timing.assertions());
+    }
+
+    void failed() {
+        failures.increment();
+    }
+
+    void error() {
+        errors.increment();
+    }
+}
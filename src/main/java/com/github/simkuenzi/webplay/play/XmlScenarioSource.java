@@ -0,0 +1,232 @@
+package com.github.simkuenzi.webplay.play;
+
+import com.github.simkuenzi.webplay.record.AssertionBuilder;
+import com.github.simkuenzi.webplay.record.ExchangeTiming;
+import com.github.simkuenzi.webplay.record.Headers;
+import com.github.simkuenzi.webplay.record.Payload;
+import com.github.simkuenzi.webplay.record.RequestBuilder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+// Reads a recording in the XML format written by XmlTest.
+class XmlScenarioSource implements ScenarioSource {
+    private final EndAwareInputStream in;
+    private final XMLStreamReader reader;
+    private final Map<String, Headers> headerSets = new HashMap<>();
+    private boolean started;
+
+    XmlScenarioSource(InputStream in) throws XMLStreamException {
+        this.in = new EndAwareInputStream(in);
+        this.reader = XMLInputFactory.newFactory().createXMLStreamReader(this.in);
+    }
+
+    // A recording which has been interrupted ends after its last complete request.
+    @Override
+    public AssertionBuilder next(RequestBuilder requestBuilder) throws Exception {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "request":
+                            return readRequest(requestBuilder);
+                        case "headers":
+                            headerSets.put(attribute("id"), readHeaders());
+                            break;
+                        default:
+                            started = true;
+                    }
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            if (started && in.endReached()) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    // The request is only passed on when it has been read completely.
+    private AssertionBuilder readRequest(RequestBuilder requestBuilder) throws Exception {
+        String method = attribute("method");
+        String urlPath = attribute("urlPath");
+        ExchangeTiming timing = timing();
+        String headerSet = reader.getAttributeValue(null, "headers");
+        Headers headers = headerSet == null ? new Headers() : headerSets.get(headerSet);
+        if (headers == null) {
+            throw new XMLStreamException(String.format("Headers %s are referenced before they are defined.", headerSet), reader.getLocation());
+        }
+        Payload payload = Payload.of("");
+        List<Assertion> assertions = new ArrayList<>();
+        while (reader.next() != END_ELEMENT) {
+            if (reader.isStartElement()) {
+                switch (reader.getLocalName()) {
+                    case "header":
+                        // Headers added to a shared set only apply to this request.
+                        if (headerSet != null) {
+                            headers = copy(headers);
+                            headerSet = null;
+                        }
+                        headers.add(attribute("name"), attribute("value"));
+                        skipElement();
+                        break;
+                    case "payload":
+                        boolean base64 = attribute("encoding").equals("base64");
+                        String text = reader.getElementText();
+                        payload = base64 ? Payload.of(Base64.getMimeDecoder().decode(text)) : Payload.of(text);
+                        break;
+                    case "assertion":
+                        readAssertion(assertions);
+                        break;
+                    default:
+                        skipElement();
+                }
+            }
+        }
+
+        AssertionBuilder assertionBuilder = requestBuilder.request(urlPath, method, headers, payload, timing);
+        for (Assertion assertion : assertions) {
+            assertionBuilder = assertion.attrName == null
+                    ? assertionBuilder.assertion(assertion.expected, assertion.selector)
+                    : assertionBuilder.assertion(assertion.attrName, assertion.expected, assertion.selector);
+        }
+        return assertionBuilder;
+    }
+
+    // Requests recorded without timing, or with only a part of it, have none.
+    private ExchangeTiming timing() {
+        String timestamp = reader.getAttributeValue(null, "timestamp");
+        String timeToFirstByte = reader.getAttributeValue(null, "timeToFirstByte");
+        String responseTime = reader.getAttributeValue(null, "responseTime");
+        if (timestamp == null || timeToFirstByte == null || responseTime == null) {
+            return null;
+        }
+        return new ExchangeTiming(Instant.parse(timestamp), millis(timeToFirstByte), millis(responseTime));
+    }
+
+    private static Duration millis(String millis) {
+        return Duration.ofNanos(Math.round(Double.parseDouble(millis) * 1e6));
+    }
+
+    private Headers readHeaders() throws XMLStreamException {
+        Headers headers = new Headers();
+        while (reader.next() != END_ELEMENT) {
+            if (reader.isStartElement()) {
+                if (reader.getLocalName().equals("header")) {
+                    headers.add(attribute("name"), attribute("value"));
+                }
+                skipElement();
+            }
+        }
+        return headers;
+    }
+
+    private static Headers copy(Headers headers) {
+        Headers copy = new Headers();
+        for (Headers.Header header : headers) {
+            copy.add(header.name(), header.value());
+        }
+        return copy;
+    }
+
+    private void readAssertion(List<Assertion> assertions) throws XMLStreamException {
+        String selector = attribute("selector");
+        while (reader.next() != END_ELEMENT) {
+            if (reader.isStartElement()) {
+                switch (reader.getLocalName()) {
+                    case "expectedText":
+                        assertions.add(new Assertion(selector, null, reader.getElementText()));
+                        break;
+                    case "expectedAttr":
+                        String name = attribute("name");
+                        assertions.add(new Assertion(selector, name, reader.getElementText()));
+                        break;
+                    default:
+                        skipElement();
+                }
+            }
+        }
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == START_ELEMENT) {
+                depth++;
+            } else if (event == END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private String attribute(String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
+    }
+
+    private static class EndAwareInputStream extends FilterInputStream {
+        private boolean endReached;
+
+        private EndAwareInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return end(super.read());
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return end(super.read(b, off, len));
+        }
+
+        private int end(int read) {
+            endReached |= read < 0;
+            return read;
+        }
+
+        private boolean endReached() {
+            return endReached;
+        }
+    }
+
+    private static class Assertion {
+        private final String selector;
+        private final String attrName;
+        private final String expected;
+
+        private Assertion(String selector, String attrName, String expected) {
+            this.selector = selector;
+            this.attrName = attrName;
+            this.expected = expected;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Extracts assertions from responses on a pool of workers, so that proxied connections only have to copy bytes.
+// The exchange sequence puts the results back into recorded order.
+class AssertionExtraction {
+    private final ExchangeSequence sequence;
+    private final RecordingMetrics metrics;
+    private final ExecutorService workers;
+    private final Semaphore queued;
+    private final Semaphore spilled;
+    private final Backpressure backpressure;
+
+    AssertionExtraction(ExchangeSequence sequence, RecordingMetrics metrics, int threads, int queueSize, Backpressure backpressure) {
+        this.sequence = sequence;
+        this.metrics = metrics;
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "webplay-extraction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queued = new Semaphore(queueSize);
+        this.spilled = new Semaphore(queueSize);
+        this.backpressure = backpressure;
+    }
+
+    void submit(ClientToApp exchange, Payload serverPayload) throws Exception {
+        if (queued.tryAcquire() || backpressure == Backpressure.BLOCK && acquire()) {
+            execute(exchange, serverPayload, queued);
+        } else if (backpressure == Backpressure.DROP) {
+            serverPayload.close();
+            sequence.complete(exchange.index(), exchange.withoutAssertions());
+        } else {
+            // The spilled response is not held on the heap until a worker is free.
+            // As many responses as fit into the queue may be spilled, further ones wait like with BLOCK.
+            spilled.acquire();
+            Payload spilledPayload;
+            try {
+                spilledPayload = serverPayload.spill();
+            } catch (Exception e) {
+                spilled.release();
+                throw e;
+            }
+            execute(exchange, spilledPayload, spilled);
+        }
+    }
+
+    // The permit is held until the response is extracted.
+    private void execute(ClientToApp exchange, Payload serverPayload, Semaphore permits) {
+        try {
+            workers.execute(() -> {
+                try {
+                    extract(exchange, serverPayload);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The workers have been shut down already.
+            permits.release();
+            serverPayload.close();
+            throw e;
+        }
+    }
+
+    // Waits for all submitted exchanges, however long they take. The sequence may only be ended afterwards.
+    void close() throws InterruptedException {
+        workers.shutdown();
+        while (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            System.out.println("Waiting for assertion extraction to finish.");
+        }
+    }
+
+    private boolean acquire() throws InterruptedException {
+        queued.acquire();
+        return true;
+    }
+
+    private void extract(ClientToApp exchange, Payload serverPayload) {
+        try {
+            long start = System.nanoTime();
+            ExchangeSequence.Step step = exchange.withAssertions(serverPayload);
+            metrics.extracted(System.nanoTime() - start);
+            sequence.complete(exchange.index(), step);
+        } catch (Exception e) {
+            fail(exchange, e);
+        }
+    }
+
+    private void fail(ClientToApp exchange, Exception e) {
+        e.printStackTrace();
+        try {
+            sequence.complete(exchange.index(), exchange.skipped());
+        } catch (Exception skipFailed) {
+            skipFailed.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.github.simkuenzi.webplay.record;
+
+// What to do with a response when the assertion extraction queue is full.
+public enum Backpressure {
+    // Wait until the queue has room. The proxied connection is held up meanwhile.
+    BLOCK,
+    // Record the request without assertions.
+    DROP,
+    // Write the response to a temporary file and extract the assertions later.
+    // At most as many responses as the queue holds are spilled. Further ones wait like with BLOCK.
+    SPILL
+}
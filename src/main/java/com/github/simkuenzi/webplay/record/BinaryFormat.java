@@ -0,0 +1,80 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Constants and number encoding of the binary format, shared by BinaryTest, which describes the format,
+// and the reader of the player.
+public final class BinaryFormat {
+    public static final int VERSION = 1;
+    public static final int MAGIC_LENGTH = 4;
+
+    public static final int STRING = 1;
+    public static final int REQUEST = 2;
+    public static final int END = 3;
+
+    public static final int PAYLOAD_NONE = 0;
+    public static final int PAYLOAD_TEXT = 1;
+    public static final int PAYLOAD_BINARY = 2;
+
+    public static final int ASSERTION_TEXT = 1;
+    public static final int ASSERTION_ATTR = 2;
+
+    // Strings are kept in a table of this many slots. Longer strings are written inline.
+    public static final int STRING_SLOTS = 1024;
+    public static final int MAX_SLOT_STRING_LENGTH = 256;
+
+    private static final byte[] MAGIC = {'W', 'P', 'L', 'B'};
+
+    private BinaryFormat() {
+    }
+
+    public static boolean hasMagic(byte[] start) {
+        return Arrays.equals(start, MAGIC);
+    }
+
+    static void writeMagic(OutputStream out) throws IOException {
+        out.write(MAGIC);
+    }
+
+    public static void writeVarInt(OutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xffffffffL);
+    }
+
+    public static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static int readVarInt(ByteBuffer content) {
+        return (int) readVarLong(content);
+    }
+
+    public static long readVarLong(ByteBuffer content) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = content.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    public static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
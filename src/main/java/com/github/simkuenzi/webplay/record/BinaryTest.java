@@ -0,0 +1,218 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.github.simkuenzi.webplay.record.BinaryFormat.ASSERTION_ATTR;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.ASSERTION_TEXT;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.END;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.MAX_SLOT_STRING_LENGTH;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.PAYLOAD_BINARY;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.PAYLOAD_NONE;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.PAYLOAD_TEXT;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.REQUEST;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.STRING;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.STRING_SLOTS;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.VERSION;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.writeMagic;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.writeVarInt;
+import static com.github.simkuenzi.webplay.record.BinaryFormat.writeVarLong;
+
+// Writes a recorded test in the compact binary format. It holds the same information as the XML format.
+//
+// The file starts with the magic bytes "WPLB" and the format version as two bytes. Records follow, each made of
+// a type byte, the length of its content as unsigned varint and the content. Readers skip unknown record types.
+//   STRING  (1) Slot number and UTF-8 bytes of a string. A string is defined before the first record referencing it.
+//               The table has BinaryFormat.STRING_SLOTS slots. When it is full, the slot used least recently
+//               is defined again, so the table does not grow with the length of the recording.
+//   REQUEST (2) urlPath, method, number of headers, name and value of each header,
+//               payload kind (0 none, 1 text, 2 binary), payload length and bytes (text as UTF-8),
+//               number of assertions, kind (1 text, 2 attribute), selector, [attribute name,] expected value,
+//               optionally followed by the timing: seconds and nanoseconds of the timestamp since the epoch,
+//               time to first byte and response time in nanoseconds.
+//   END     (3) Marks a complete recording, without content.
+// Numbers are unsigned varints. A string is given as its slot number plus one, or as 0 followed by the length and
+// UTF-8 bytes of a string written inline. Strings longer than BinaryFormat.MAX_SLOT_STRING_LENGTH are written inline.
+public class BinaryTest implements Test {
+    private final OutputStream out;
+    // Slots by string, least recently used first.
+    private final Map<String, Integer> strings = new LinkedHashMap<>(16, 0.75f, true);
+    private int stringsInRequest;
+    private final ByteArrayOutputStream request = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream assertions = new ByteArrayOutputStream();
+    private int assertionCount;
+    private ExchangeTiming timing;
+
+    public BinaryTest(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public RequestBuilder test() throws IOException {
+        writeMagic(out);
+        out.write(VERSION >>> 8);
+        out.write(VERSION);
+        return new BinaryRequestBuilder();
+    }
+
+    private void writeRequestStart(String urlPath, String method, Headers headers, Payload payload, ExchangeTiming timing) throws Exception {
+        request.reset();
+        assertions.reset();
+        assertionCount = 0;
+        stringsInRequest = 0;
+        this.timing = timing;
+        writeString(request, urlPath);
+        writeString(request, method);
+        writeVarInt(request, headers.size());
+        for (Headers.Header header : headers) {
+            writeString(request, header.name());
+            writeString(request, header.value());
+        }
+
+        if (payload.isEmpty()) {
+            writeVarInt(request, PAYLOAD_NONE);
+        } else if (payload.binary()) {
+            byte[] bytes = payload.bytes();
+            writeVarInt(request, PAYLOAD_BINARY);
+            writeVarInt(request, bytes.length);
+            request.write(bytes);
+        } else {
+            // Text is stored as the XML format stores it, decoded from the charset of the request.
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            Writer writer = new OutputStreamWriter(text, StandardCharsets.UTF_8);
+            payload.decode(writer::write);
+            writer.flush();
+            writeVarInt(request, PAYLOAD_TEXT);
+            writeVarInt(request, text.size());
+            text.writeTo(request);
+        }
+    }
+
+    // Every completed request is flushed, so that an interrupted recording leaves a usable file.
+    private void writeRequestEnd() throws IOException {
+        writeVarInt(request, assertionCount);
+        assertions.writeTo(request);
+        if (timing != null) {
+            writeVarLong(request, timing.timestamp().getEpochSecond());
+            writeVarLong(request, timing.timestamp().getNano());
+            writeVarLong(request, timing.timeToFirstByte().toNanos());
+            writeVarLong(request, timing.responseTime().toNanos());
+        }
+        writeRecord(REQUEST, request);
+        out.flush();
+    }
+
+    private void writeAssertion(String expectedText, String selector) throws IOException {
+        writeVarInt(assertions, ASSERTION_TEXT);
+        writeString(assertions, selector);
+        writeString(assertions, expectedText);
+        assertionCount++;
+    }
+
+    private void writeAssertion(String expectedAttrName, String expectedAttrValue, String selector) throws IOException {
+        writeVarInt(assertions, ASSERTION_ATTR);
+        writeString(assertions, selector);
+        writeString(assertions, expectedAttrName);
+        writeString(assertions, expectedAttrValue);
+        assertionCount++;
+    }
+
+    private void writeTestEnd() throws IOException {
+        writeRecord(END, new ByteArrayOutputStream());
+        out.flush();
+    }
+
+    // New strings are defined right away, so they precede the request being built.
+    // A request never reuses a slot it refers to: once it could, its remaining strings are written inline.
+    private void writeString(OutputStream target, String value) throws IOException {
+        Integer slot = strings.get(value);
+        if (slot == null && value.length() <= MAX_SLOT_STRING_LENGTH && stringsInRequest < STRING_SLOTS) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length <= MAX_SLOT_STRING_LENGTH) {
+                slot = strings.size();
+                if (slot == STRING_SLOTS) {
+                    Iterator<Integer> leastRecentlyUsed = strings.values().iterator();
+                    slot = leastRecentlyUsed.next();
+                    leastRecentlyUsed.remove();
+                }
+                strings.put(value, slot);
+                ByteArrayOutputStream definition = new ByteArrayOutputStream();
+                writeVarInt(definition, slot);
+                definition.write(bytes);
+                writeRecord(STRING, definition);
+            }
+        }
+        stringsInRequest++;
+        if (slot != null) {
+            writeVarInt(target, slot + 1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(target, 0);
+            writeVarInt(target, bytes.length);
+            target.write(bytes);
+        }
+    }
+
+    private void writeRecord(int type, ByteArrayOutputStream content) throws IOException {
+        out.write(type);
+        writeVarInt(out, content.size());
+        content.writeTo(out);
+    }
+
+    private class BinaryRequestBuilder implements RequestBuilder {
+        @Override
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload) throws Exception {
+            return request(urlPath, method, headers, payload, null);
+        }
+
+        @Override
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload, ExchangeTiming timing) throws Exception {
+            writeRequestStart(urlPath, method, headers, payload, timing);
+            return new BinaryAssertionBuilder();
+        }
+
+        @Override
+        public void end() throws IOException {
+            writeTestEnd();
+        }
+    }
+
+    private class BinaryAssertionBuilder implements AssertionBuilder {
+        @Override
+        public AssertionBuilder assertion(String expectedAttrName, String expectedAttrValue, String selector) throws IOException {
+            writeAssertion(expectedAttrName, expectedAttrValue, selector);
+            return this;
+        }
+
+        @Override
+        public AssertionBuilder assertion(String expectedText, String selector) throws IOException {
+            writeAssertion(expectedText, selector);
+            return this;
+        }
+
+        @Override
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload) throws Exception {
+            return request(urlPath, method, headers, payload, null);
+        }
+
+        @Override
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload, ExchangeTiming timing) throws Exception {
+            writeRequestEnd();
+            writeRequestStart(urlPath, method, headers, payload, timing);
+            return this;
+        }
+
+        @Override
+        public void end() throws IOException {
+            writeRequestEnd();
+            writeTestEnd();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Finds the end of a message body in the bytes forwarded as they arrive.
+// Only the body itself is captured, without the chunk framing.
+abstract class BodyFraming {
+
+    static BodyFraming none() {
+        return fixed(0);
+    }
+
+    static BodyFraming fixed(long contentLength) {
+        return new Fixed(contentLength);
+    }
+
+    static BodyFraming chunked() {
+        return new Chunked();
+    }
+
+    // A response without length ends when the app closes the connection.
+    static BodyFraming untilClose() {
+        return new UntilClose();
+    }
+
+    abstract boolean done();
+
+    // Returns the number of available bytes belonging to the body.
+    abstract int consume(ByteBuffer available, Capture capture) throws IOException;
+
+    boolean endsWithClose() {
+        return false;
+    }
+
+    private static class Fixed extends BodyFraming {
+        private long remaining;
+
+        private Fixed(long contentLength) {
+            this.remaining = contentLength;
+        }
+
+        @Override
+        boolean done() {
+            return remaining == 0;
+        }
+
+        @Override
+        int consume(ByteBuffer available, Capture capture) throws IOException {
+            int length = (int) Math.min(remaining, available.remaining());
+            capture.reserve(remaining);
+            capture.add(available.duplicate().limit(available.position() + length));
+            remaining -= length;
+            return length;
+        }
+    }
+
+    private static class UntilClose extends BodyFraming {
+
+        @Override
+        boolean done() {
+            return false;
+        }
+
+        @Override
+        int consume(ByteBuffer available, Capture capture) throws IOException {
+            capture.add(available);
+            return available.remaining();
+        }
+
+        @Override
+        boolean endsWithClose() {
+            return true;
+        }
+    }
+
+    private static class Chunked extends BodyFraming {
+        private State state = State.SIZE;
+        private long size;
+
+        @Override
+        boolean done() {
+            return state == State.DONE;
+        }
+
+        @Override
+        int consume(ByteBuffer available, Capture capture) throws IOException {
+            int start = available.position();
+            int i = start;
+            while (i < available.limit() && state != State.DONE) {
+                if (state == State.DATA) {
+                    int length = (int) Math.min(size, available.limit() - i);
+                    capture.add(available.duplicate().position(i).limit(i + length));
+                    i += length;
+                    size -= length;
+                    if (size == 0) {
+                        state = State.DATA_CR;
+                    }
+                } else {
+                    next(available.get(i++));
+                }
+            }
+            return i - start;
+        }
+
+        private void next(byte b) throws IOException {
+            switch (state) {
+                case SIZE:
+                    int digit = Character.digit(b, 16);
+                    if (digit >= 0 && size < 1L << 56) {
+                        size = size * 16 + digit;
+                    } else if (b == ';' || b == ' ' || b == '\t') {
+                        state = State.EXTENSION;
+                    } else {
+                        state = expect(b, '\r', State.SIZE_LF);
+                    }
+                    break;
+                case EXTENSION:
+                    if (b == '\r') {
+                        state = State.SIZE_LF;
+                    }
+                    break;
+                case SIZE_LF:
+                    state = expect(b, '\n', size == 0 ? State.TRAILER : State.DATA);
+                    break;
+                case DATA_CR:
+                    state = expect(b, '\r', State.DATA_LF);
+                    break;
+                case DATA_LF:
+                    state = expect(b, '\n', State.SIZE);
+                    break;
+                case TRAILER:
+                    state = b == '\r' ? State.END_LF : State.TRAILER_LINE;
+                    break;
+                case TRAILER_LINE:
+                    if (b == '\r') {
+                        state = State.TRAILER_LF;
+                    }
+                    break;
+                case TRAILER_LF:
+                    state = expect(b, '\n', State.TRAILER);
+                    break;
+                case END_LF:
+                    state = expect(b, '\n', State.DONE);
+                    break;
+                default:
+                    throw new IllegalStateException(state.name());
+            }
+        }
+
+        private static State expect(byte actual, char expected, State next) throws IOException {
+            if (actual != expected) {
+                throw new IOException(String.format("Chunked body is malformed at byte %d.", actual));
+            }
+            return next;
+        }
+
+        private enum State {SIZE, EXTENSION, SIZE_LF, DATA, DATA_CR, DATA_LF, TRAILER, TRAILER_LINE, TRAILER_LF, END_LF, DONE}
+    }
+}
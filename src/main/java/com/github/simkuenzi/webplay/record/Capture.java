@@ -0,0 +1,104 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Collects a message body while it is forwarded. Bodies larger than the limit are not kept at all.
+class Capture {
+    private final CapturePool pool;
+    private final int limit;
+    private ByteBuffer buffer;
+    private Path spillFile;
+    private FileChannel spill;
+    private long length;
+    private boolean overflowed;
+
+    Capture(CapturePool pool, int limit) {
+        this.pool = pool;
+        this.limit = limit;
+    }
+
+    // A body known to be large goes to a file right away.
+    void reserve(long expected) throws IOException {
+        if (!overflowed && spill == null && expected > pool.spillThreshold() && expected <= limit) {
+            spill();
+        }
+    }
+
+    void add(ByteBuffer data) throws IOException {
+        int added = data.remaining();
+        if (overflowed || added == 0) {
+            return;
+        }
+        if (added > limit - length) {
+            discard();
+            overflowed = true;
+            return;
+        }
+        if (spill == null && length + added > pool.spillThreshold()) {
+            spill();
+        }
+        if (spill != null) {
+            ByteBuffer written = data.duplicate();
+            while (written.hasRemaining()) {
+                spill.write(written);
+            }
+        } else {
+            if (buffer == null) {
+                buffer = pool.acquire();
+            }
+            buffer.put(data.duplicate());
+        }
+        length += added;
+    }
+
+    // Returns null if the body exceeded the limit. The capture is used up by this.
+    Payload payload(String charset, boolean binary) throws IOException {
+        if (overflowed) {
+            return null;
+        } else if (spill != null) {
+            FileChannel channel = spill;
+            spill = null;
+            return Payload.mapped(spillFile, channel, charset, binary);
+        } else if (buffer != null) {
+            ByteBuffer pooled = buffer;
+            buffer = null;
+            return Payload.pooled(pooled.duplicate().flip(), charset, binary, () -> pool.release(pooled));
+        } else {
+            return Payload.pooled(ByteBuffer.allocate(0), charset, binary, () -> {});
+        }
+    }
+
+    void discard() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                // Deleted anyway
+            }
+            spill = null;
+            Payload.delete(spillFile);
+        }
+    }
+
+    private void spill() throws IOException {
+        spillFile = Files.createTempFile("webplay", ".capture");
+        spill = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (buffer != null) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                spill.write(buffer);
+            }
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Hands out captures for message bodies. Small bodies are kept in pooled buffers, larger ones are spilled to files.
+class CapturePool {
+    private static final int POOLED_BUFFERS = 64;
+
+    private final int limit;
+    private final int spillThreshold;
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+    CapturePool(int limit, int spillThreshold) {
+        this.limit = limit;
+        this.spillThreshold = spillThreshold;
+    }
+
+    // A capture which is not needed keeps nothing but empty bodies.
+    Capture capture(boolean needed) {
+        return new Capture(this, needed ? limit : 0);
+    }
+
+    int spillThreshold() {
+        return spillThreshold;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocate(spillThreshold);
+    }
+
+    void release(ByteBuffer buffer) {
+        free.offer(buffer);
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.simkuenzi.webplay.record;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+class ClientToApp {
+    private final long index;
+    private final String method;
+    private final String urlPath;
+    private final String version;
+    private final Headers headers;
+    private final Payload payload;
+    private final String mime;
+    private final Instant timestamp;
+    private final long forwarded = System.nanoTime();
+    private ExchangeTiming timing;
+
+    // Created when the request has been forwarded to the app.
+    ClientToApp(long index, String method, String urlPath, String version, Headers headers, Payload payload, String mime, Instant timestamp) {
+        this.index = index;
+        this.method = method;
+        this.urlPath = urlPath;
+        this.version = version;
+        this.headers = headers;
+        this.payload = payload;
+        this.mime = mime;
+        this.timestamp = timestamp;
+    }
+
+    long index() {
+        return index;
+    }
+
+    String method() {
+        return method;
+    }
+
+    String urlPath() {
+        return urlPath;
+    }
+
+    // Request payloads above the capture limit are forwarded, but the exchange cannot be recorded.
+    boolean captured() {
+        return payload != null;
+    }
+
+    boolean included(String serverMime, List<String> includedContentTypes) {
+        return includedContentTypes.contains(serverMime) || includedContentTypes.contains(mime);
+    }
+
+    // Called when the response has been forwarded to the client.
+    void responded(long headReceived) {
+        timing = new ExchangeTiming(timestamp, Duration.ofNanos(headReceived - forwarded), Duration.ofNanos(System.nanoTime() - forwarded));
+    }
+
+    // The app closes the connection after its response to an HTTP/1.0 request, whatever version the response has.
+    boolean closesConnection() {
+        return version.equals("HTTP/1.0") || headers.contains("Connection", "close");
+    }
+
+    // Walks the response document. The returned step only writes the collected assertions.
+    ExchangeSequence.Step withAssertions(Payload serverPayload) {
+        Document document;
+        try (serverPayload) {
+            document = Jsoup.parse(serverPayload.text());
+        }
+        List<AssertionStep> assertions = new ArrayList<>();
+        for (Element input : document.select("input")) {
+            String value = input.val();
+            String selector = String.format("input[name=%s]", input.attr("name"));
+            assertions.add(assertionBuilder -> assertionBuilder.assertion("value", value, selector));
+        }
+        for (Element textarea : document.select("textarea")) {
+            String text = textarea.text();
+            String selector = String.format("textarea[name=%s]", textarea.attr("name"));
+            assertions.add(assertionBuilder -> assertionBuilder.assertion(text, selector));
+        }
+        return requestBuilder -> {
+            AssertionBuilder assertionBuilder = request(requestBuilder);
+            for (AssertionStep assertion : assertions) {
+                assertionBuilder = assertion.apply(assertionBuilder);
+            }
+            return assertionBuilder;
+        };
+    }
+
+    ExchangeSequence.Step withoutAssertions() {
+        return this::request;
+    }
+
+    ExchangeSequence.Step skipped() {
+        return requestBuilder -> {
+            release();
+            return requestBuilder;
+        };
+    }
+
+    void release() {
+        if (payload != null) {
+            payload.close();
+        }
+    }
+
+    private AssertionBuilder request(RequestBuilder requestBuilder) throws Exception {
+        try {
+            return requestBuilder.request(urlPath, method, headers, payload, timing);
+        } finally {
+            release();
+        }
+    }
+
+    private interface AssertionStep {
+        AssertionBuilder apply(AssertionBuilder assertionBuilder) throws Exception;
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.simkuenzi.webplay.record;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// One exchange proxied by the recorder, from the arrival of the request until the response is forwarded.
+@Name("com.github.simkuenzi.webplay.Exchange")
+@Label("Proxied Exchange")
+@Category({"WebPlay", "Recording"})
+class ExchangeEvent extends Event {
+    // Only asked whether the event is enabled. Without a recording, no event is allocated.
+    private static final ExchangeEvent TYPE = new ExchangeEvent();
+
+    @Label("Method")
+    String method;
+
+    @Label("URL Path")
+    String urlPath;
+
+    @Label("Status")
+    String status;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Size")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Recorded")
+    @Description("Whether the response has one of the included content types and is within the capture limit.")
+    boolean recorded;
+
+    // Null if JFR does not record the event.
+    static ExchangeEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        ExchangeEvent event = new ExchangeEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Applies exchanges of concurrent connections to one builder chain, ordered by the arrival of their requests.
+class ExchangeSequence {
+    private final Map<Long, Step> completed = new TreeMap<>();
+    private RequestBuilder requestBuilder;
+    private long started;
+    private long next;
+    private boolean ended;
+
+    ExchangeSequence(RequestBuilder requestBuilder) {
+        this.requestBuilder = requestBuilder;
+    }
+
+    synchronized long start() {
+        return started++;
+    }
+
+    synchronized void complete(long index, Step step) throws Exception {
+        if (ended) {
+            throw new IllegalStateException(String.format("Exchange %d completed after the end of the recording.", index));
+        }
+        completed.put(index, step);
+        while (completed.containsKey(next)) {
+            requestBuilder = completed.remove(next).apply(requestBuilder);
+            next++;
+        }
+    }
+
+    // Exchanges which never completed leave a gap. The remaining ones are still written in order.
+    synchronized void end() throws Exception {
+        for (Step step : completed.values()) {
+            requestBuilder = step.apply(requestBuilder);
+        }
+        completed.clear();
+        ended = true;
+        requestBuilder.end();
+    }
+
+    interface Step {
+        RequestBuilder apply(RequestBuilder requestBuilder) throws Exception;
+    }
+}
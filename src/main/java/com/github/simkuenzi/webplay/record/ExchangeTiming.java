@@ -0,0 +1,32 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Timing of a recorded exchange. The durations are taken from the moment the request had been forwarded to the app.
+public class ExchangeTiming {
+    private final Instant timestamp;
+    private final Duration timeToFirstByte;
+    private final Duration responseTime;
+
+    public ExchangeTiming(Instant timestamp, Duration timeToFirstByte, Duration responseTime) {
+        this.timestamp = timestamp;
+        this.timeToFirstByte = timeToFirstByte;
+        this.responseTime = responseTime;
+    }
+
+    // When the request arrived from the client.
+    public Instant timestamp() {
+        return timestamp;
+    }
+
+    // Until the head of the response arrived from the app.
+    public Duration timeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    // Until the response had been forwarded completely.
+    public Duration responseTime() {
+        return responseTime;
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Headers in the order they were sent, including repeated ones like Set-Cookie.
+// Names are looked up case-insensitively.
+public class Headers implements Iterable<Headers.Header> {
+    private final List<Header> headers = new ArrayList<>();
+    private final Map<String, Integer> firstByName = new HashMap<>();
+
+    public Headers add(String name, String value) {
+        firstByName.putIfAbsent(name.toLowerCase(Locale.ROOT), headers.size());
+        headers.add(new Header(name, value));
+        return this;
+    }
+
+    // The value of the first header with this name, or null.
+    public String get(String name) {
+        Integer index = firstByName.get(name.toLowerCase(Locale.ROOT));
+        return index != null ? headers.get(index).value() : null;
+    }
+
+    public List<String> all(String name) {
+        List<String> values = new ArrayList<>();
+        Integer first = firstByName.get(name.toLowerCase(Locale.ROOT));
+        if (first != null) {
+            for (int i = first; i < headers.size(); i++) {
+                if (headers.get(i).name().equalsIgnoreCase(name)) {
+                    values.add(headers.get(i).value());
+                }
+            }
+        }
+        return values;
+    }
+
+    // Whether a comma separated header like Connection lists the token.
+    public boolean contains(String name, String token) {
+        for (String value : all(name)) {
+            for (String element : value.split(",")) {
+                if (element.trim().equalsIgnoreCase(token)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return headers.size();
+    }
+
+    @Override
+    public Iterator<Header> iterator() {
+        return Collections.unmodifiableList(headers).iterator();
+    }
+
+    public static class Header {
+        private final String name;
+        private final String value;
+
+        private Header(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public String value() {
+            return value;
+        }
+    }
+}
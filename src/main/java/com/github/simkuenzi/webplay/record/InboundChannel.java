@@ -0,0 +1,89 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+class InboundChannel {
+    private static final int HEADER_END_SEQ = 0x0d0a0d0a;
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private boolean ended;
+
+    InboundChannel(ReadableByteChannel channel, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer.clear().flip();
+    }
+
+    // Returns the header block including the terminating empty line.
+    // The returned buffer is a view on the internal buffer and is only valid until the next read.
+    ByteBuffer readHead() throws IOException {
+        int scanned = 0;
+        int endSeq = 0;
+        while (true) {
+            for (int i = buffer.position() + scanned; i < buffer.limit(); i++) {
+                endSeq = (endSeq << 8) | (buffer.get(i) & 0xff);
+                if (endSeq == HEADER_END_SEQ) {
+                    ByteBuffer head = buffer.duplicate().limit(i + 1);
+                    buffer.position(i + 1);
+                    return head;
+                }
+            }
+            scanned = buffer.remaining();
+            fill();
+        }
+    }
+
+    // Waits for the next message. Returns false if the channel was closed in between two messages.
+    boolean awaitMessage() throws IOException {
+        return buffer.hasRemaining() || receive();
+    }
+
+    // Reads into the emptied buffer. Views returned before are no longer valid.
+    // Returns false at the end of the stream.
+    boolean receive() throws IOException {
+        buffer.clear();
+        int read = channel.read(buffer);
+        buffer.flip();
+        ended = read < 0;
+        return read > 0;
+    }
+
+    // Whether the end of the stream was received.
+    boolean ended() {
+        return ended;
+    }
+
+    boolean hasBuffered() {
+        return buffer.hasRemaining();
+    }
+
+    // Bytes read but not taken yet.
+    ByteBuffer buffered() {
+        return buffer.duplicate();
+    }
+
+    // Takes up to maxLength bytes which have already been read.
+    ByteBuffer take(int maxLength) {
+        int length = Math.min(maxLength, buffer.remaining());
+        ByteBuffer taken = buffer.duplicate().limit(buffer.position() + length);
+        buffer.position(buffer.position() + length);
+        return taken;
+    }
+
+    private void fill() throws IOException {
+        if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            larger.put(buffer).flip();
+            buffer = larger;
+        }
+        buffer.compact();
+        int read = channel.read(buffer);
+        buffer.flip();
+        if (read < 0) {
+            throw new EOFException("Channel closed before end of header.");
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.github.simkuenzi.webplay.record;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Indents elements as they are written. Elements containing text are written as they are,
+// so that preserved whitespace in payloads and expected texts stays untouched.
+class IndentingXMLStreamWriter implements XMLStreamWriter {
+    private static final String INDENT = "  ";
+
+    private final XMLStreamWriter writer;
+    private final Deque<Content> open = new ArrayDeque<>();
+    private boolean afterStartDocument;
+
+    IndentingXMLStreamWriter(XMLStreamWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeStartElement(String localName) throws XMLStreamException {
+        beforeStart();
+        writer.writeStartElement(localName);
+        open.push(new Content());
+    }
+
+    @Override
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        beforeStart();
+        writer.writeStartElement(namespaceURI, localName);
+        open.push(new Content());
+    }
+
+    @Override
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        beforeStart();
+        writer.writeStartElement(prefix, localName, namespaceURI);
+        open.push(new Content());
+    }
+
+    @Override
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        beforeStart();
+        writer.writeEmptyElement(namespaceURI, localName);
+    }
+
+    @Override
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        beforeStart();
+        writer.writeEmptyElement(prefix, localName, namespaceURI);
+    }
+
+    @Override
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        beforeStart();
+        writer.writeEmptyElement(localName);
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+        Content content = open.pop();
+        if (content.elements && !content.text) {
+            newLine(open.size());
+        }
+        writer.writeEndElement();
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+        while (!open.isEmpty()) {
+            writeEndElement();
+        }
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        writer.close();
+    }
+
+    @Override
+    public void flush() throws XMLStreamException {
+        writer.flush();
+    }
+
+    @Override
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        writer.writeAttribute(localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+        writer.writeAttribute(prefix, namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        writer.writeAttribute(namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        writer.writeNamespace(prefix, namespaceURI);
+    }
+
+    @Override
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        writer.writeDefaultNamespace(namespaceURI);
+    }
+
+    @Override
+    public void writeComment(String data) throws XMLStreamException {
+        beforeStart();
+        writer.writeComment(data);
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        beforeStart();
+        writer.writeProcessingInstruction(target);
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        beforeStart();
+        writer.writeProcessingInstruction(target, data);
+    }
+
+    @Override
+    public void writeCData(String data) throws XMLStreamException {
+        text();
+        writer.writeCData(data);
+    }
+
+    @Override
+    public void writeDTD(String dtd) throws XMLStreamException {
+        writer.writeDTD(dtd);
+    }
+
+    @Override
+    public void writeEntityRef(String name) throws XMLStreamException {
+        text();
+        writer.writeEntityRef(name);
+    }
+
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+        writer.writeStartDocument();
+        afterStartDocument = true;
+    }
+
+    @Override
+    public void writeStartDocument(String version) throws XMLStreamException {
+        writer.writeStartDocument(version);
+        afterStartDocument = true;
+    }
+
+    @Override
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        writer.writeStartDocument(encoding, version);
+        afterStartDocument = true;
+    }
+
+    @Override
+    public void writeCharacters(String text) throws XMLStreamException {
+        text();
+        writer.writeCharacters(text);
+    }
+
+    @Override
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        text();
+        writer.writeCharacters(text, start, len);
+    }
+
+    @Override
+    public String getPrefix(String uri) throws XMLStreamException {
+        return writer.getPrefix(uri);
+    }
+
+    @Override
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        writer.setPrefix(prefix, uri);
+    }
+
+    @Override
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        writer.setDefaultNamespace(uri);
+    }
+
+    @Override
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        writer.setNamespaceContext(context);
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return writer.getNamespaceContext();
+    }
+
+    @Override
+    public Object getProperty(String name) throws IllegalArgumentException {
+        return writer.getProperty(name);
+    }
+
+    private void beforeStart() throws XMLStreamException {
+        Content parent = open.peek();
+        if (parent != null) {
+            parent.elements = true;
+            if (!parent.text) {
+                newLine(open.size());
+            }
+        } else if (afterStartDocument) {
+            newLine(0);
+        }
+    }
+
+    private void text() {
+        Content current = open.peek();
+        if (current != null) {
+            current.text = true;
+        }
+    }
+
+    private void newLine(int depth) throws XMLStreamException {
+        writer.writeCharacters("\n" + INDENT.repeat(depth));
+    }
+
+    private static class Content {
+        private boolean elements;
+        private boolean text;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Writes the byte offsets of the elements of an XML recording to a sidecar file, one line per element:
+//   webplay-index 1
+//   headers <id> <offset> <length>
+//   request <offset> <length> <headers id or -> <urlPath>
+//   end <length of the recording>
+// The end line is only written for a complete recording. Readers rebuild an index without it.
+class IndexWriter {
+    private static final String HEADER = "webplay-index 1";
+
+    private final Writer index;
+    private CountingWriter counter;
+
+    IndexWriter(Writer index) {
+        this.index = index;
+    }
+
+    // The recording is written as UTF-8 through the returned writer.
+    Writer counting(Writer out) throws IOException {
+        counter = new CountingWriter(out);
+        index.write(HEADER + "\n");
+        return counter;
+    }
+
+    // Everything written before must have been flushed, so that the next '<' is the start of the element.
+    void elementStart() {
+        counter.elementStart = -1;
+    }
+
+    // The element must have been flushed.
+    void headers(String id) throws IOException {
+        index.write(String.format("headers %s %d %d%n", id, counter.elementStart, counter.position - counter.elementStart));
+    }
+
+    void request(String urlPath, String headerSet) throws IOException {
+        index.write(String.format("request %d %d %s %s%n", counter.elementStart, counter.position - counter.elementStart,
+                headerSet == null ? "-" : headerSet, urlPath));
+    }
+
+    void end() throws IOException {
+        index.write(String.format("end %d%n", counter.position));
+        index.flush();
+    }
+
+    private static class CountingWriter extends Writer {
+        private final Writer out;
+        private long position;
+        private long elementStart;
+
+        private CountingWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                char c = cbuf[i];
+                if (c == '<' && elementStart < 0) {
+                    elementStart = position;
+                }
+                // Surrogates count two bytes each, four for the pair.
+                position += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+            }
+            out.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            write(str.toCharArray(), off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// The start line and headers of a message, parsed directly from the bytes of the head.
+// For requests, the start line holds method, target and version, for responses version, status and reason.
+class MessageHead {
+    private final String first;
+    private final String second;
+    private final String third;
+    private final Headers headers;
+    private final String mime;
+    private final String charset;
+
+    private MessageHead(String first, String second, String third, Headers headers) {
+        this.first = first;
+        this.second = second;
+        this.third = third;
+        this.headers = headers;
+
+        String contentType = headers.get("Content-Type");
+        if (contentType == null) {
+            this.mime = "";
+            this.charset = null;
+        } else {
+            int parameters = contentType.indexOf(';');
+            this.mime = (parameters < 0 ? contentType : contentType.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+            this.charset = parameters < 0 ? null : parameter(contentType.substring(parameters + 1), "charset");
+        }
+    }
+
+    // The head ends with the empty line.
+    static MessageHead parse(ByteBuffer head) throws IOException {
+        byte[] bytes = new byte[head.remaining()];
+        head.duplicate().get(bytes);
+
+        int lineEnd = lineEnd(bytes, 0);
+        int firstEnd = indexOf(bytes, 0, lineEnd, (byte) ' ');
+        int secondStart = skipWhitespace(bytes, firstEnd, lineEnd);
+        int secondEnd = indexOf(bytes, secondStart, lineEnd, (byte) ' ');
+        if (firstEnd == 0 || secondStart == secondEnd) {
+            throw notUnderstood("Start line", bytes, 0, lineEnd);
+        }
+        String first = string(bytes, 0, firstEnd);
+        String second = string(bytes, secondStart, secondEnd);
+        int thirdStart = skipWhitespace(bytes, secondEnd, lineEnd);
+        String third = string(bytes, thirdStart, trimEnd(bytes, thirdStart, lineEnd));
+
+        Headers headers = new Headers();
+        int lineStart = nextLine(bytes, lineEnd);
+        while ((lineEnd = lineEnd(bytes, lineStart)) > lineStart) {
+            int colon = indexOf(bytes, lineStart, lineEnd, (byte) ':');
+            int nameEnd = trimEnd(bytes, lineStart, colon);
+            if (colon == lineEnd || nameEnd == lineStart || whitespace(bytes[lineStart])) {
+                throw notUnderstood("Header line", bytes, lineStart, lineEnd);
+            }
+            int valueStart = skipWhitespace(bytes, colon + 1, lineEnd);
+            headers.add(string(bytes, lineStart, nameEnd), string(bytes, valueStart, trimEnd(bytes, valueStart, lineEnd)));
+            lineStart = nextLine(bytes, lineEnd);
+        }
+        return new MessageHead(first, second, third, headers);
+    }
+
+    String first() {
+        return first;
+    }
+
+    String second() {
+        return second;
+    }
+
+    String third() {
+        return third;
+    }
+
+    Headers headers() {
+        return headers;
+    }
+
+    String mime() {
+        return mime;
+    }
+
+    // Null if no charset is declared.
+    String charset() {
+        return charset;
+    }
+
+    private static String parameter(String parameters, String name) {
+        for (String parameter : parameters.split(";")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && parameter.substring(0, equals).trim().equalsIgnoreCase(name)) {
+                String value = parameter.substring(equals + 1).trim();
+                return value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")
+                        ? value.substring(1, value.length() - 1) : value;
+            }
+        }
+        return null;
+    }
+
+    // The end of the line content, without CR LF. Lines ending with a bare LF are accepted too.
+    private static int lineEnd(byte[] bytes, int from) {
+        int lf = indexOf(bytes, from, bytes.length, (byte) '\n');
+        return lf > from && bytes[lf - 1] == '\r' ? lf - 1 : lf;
+    }
+
+    private static int nextLine(byte[] bytes, int lineEnd) {
+        return lineEnd < bytes.length && bytes[lineEnd] == '\r' ? lineEnd + 2 : lineEnd + 1;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int from, int to) {
+        while (from < to && whitespace(bytes[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(byte[] bytes, int from, int to) {
+        while (to > from && whitespace(bytes[to - 1])) {
+            to--;
+        }
+        return to;
+    }
+
+    private static boolean whitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static String string(byte[] bytes, int from, int to) {
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static IOException notUnderstood(String what, byte[] bytes, int from, int to) {
+        return new IOException(String.format("%s %s is not understood.", what, string(bytes, from, to)));
+    }
+}
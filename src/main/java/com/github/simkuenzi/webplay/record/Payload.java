@@ -0,0 +1,175 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// The body of a recorded message. The bytes are only decoded when the text is needed.
+// Binary payloads are never decoded but written as base64.
+// Closing the payload hands back its buffer or deletes its file, so it must not be used afterwards.
+public class Payload implements AutoCloseable {
+    private static final int DECODE_CHUNK = 8 * 1024;
+    private static final int BASE64_CHUNK = 3 * 1024;
+
+    private final ByteBuffer bytes;
+    private final String charset;
+    private final boolean binary;
+    private final Runnable release;
+    private final boolean mapped;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private Payload(ByteBuffer bytes, String charset, boolean binary, Runnable release, boolean mapped) {
+        this.bytes = bytes;
+        this.charset = charset;
+        this.binary = binary;
+        this.release = release;
+        this.mapped = mapped;
+    }
+
+    public static Payload of(String text) {
+        return new Payload(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), null, false, () -> {}, false);
+    }
+
+    public static Payload of(byte[] bytes) {
+        return new Payload(ByteBuffer.wrap(bytes), null, true, () -> {}, false);
+    }
+
+    // The charset is only looked up when the payload is decoded. Without a charset, UTF-8 is assumed.
+    static Payload pooled(ByteBuffer bytes, String charset, boolean binary, Runnable release) {
+        return new Payload(bytes, charset, binary, release, false);
+    }
+
+    // The file is deleted when the payload is closed.
+    static Payload mapped(Path file, FileChannel channel, String charset, boolean binary) throws IOException {
+        try (channel) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Payload(bytes, charset, binary, () -> delete(file), true);
+        }
+    }
+
+    public boolean isEmpty() {
+        return !bytes.hasRemaining();
+    }
+
+    public boolean binary() {
+        return binary;
+    }
+
+    public byte[] bytes() {
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.duplicate().get(copy);
+        return copy;
+    }
+
+    public String text() {
+        Charset charset = charset();
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), charset);
+        }
+        return charset.decode(bytes.duplicate()).toString();
+    }
+
+    // Encodes the payload piece by piece, without holding the whole text.
+    public void base64(Chars out) throws Exception {
+        Base64.Encoder encoder = Base64.getEncoder();
+        ByteBuffer in = bytes.duplicate();
+        byte[] chunk = new byte[BASE64_CHUNK];
+        char[] chars = new char[BASE64_CHUNK / 3 * 4];
+        while (in.hasRemaining()) {
+            int length = Math.min(chunk.length, in.remaining());
+            in.get(chunk, 0, length);
+            byte[] encoded = encoder.encode(length == chunk.length ? chunk : Arrays.copyOf(chunk, length));
+            for (int i = 0; i < encoded.length; i++) {
+                chars[i] = (char) encoded[i];
+            }
+            out.write(chars, 0, encoded.length);
+        }
+    }
+
+    // Decodes the payload piece by piece, without holding the whole text.
+    public void decode(Chars out) throws Exception {
+        CharsetDecoder decoder = charset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = bytes.duplicate();
+        CharBuffer chars = CharBuffer.allocate((int) Math.min(DECODE_CHUNK, in.remaining() + 1L));
+        CoderResult result;
+        do {
+            result = decoder.decode(in, chars, true);
+            write(chars, out);
+        } while (result.isOverflow());
+        while (decoder.flush(chars).isOverflow()) {
+            write(chars, out);
+        }
+        write(chars, out);
+    }
+
+    // Moves a payload held in memory to a file.
+    Payload spill() throws IOException {
+        if (mapped) {
+            return this;
+        }
+        Path file = Files.createTempFile("webplay", ".capture");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer data = bytes.duplicate();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (IOException e) {
+            channel.close();
+            delete(file);
+            throw e;
+        }
+        close();
+        return mapped(file, channel, charset, binary);
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+
+    private Charset charset() {
+        try {
+            return charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8;
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static void write(CharBuffer chars, Chars out) throws Exception {
+        chars.flip();
+        if (chars.hasRemaining()) {
+            out.write(chars.array(), 0, chars.limit());
+        }
+        chars.clear();
+    }
+
+    static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // A mapped file may not be deletable on every platform.
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    public interface Chars {
+        void write(char[] chars, int start, int length) throws Exception;
+    }
+}
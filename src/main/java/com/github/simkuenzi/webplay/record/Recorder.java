@@ -4,9 +4,97 @@ import java.net.InetSocketAddress;
 import java.nio.channels.ServerSocketChannel;
 
 public class Recorder {
+    private int extractionThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int extractionQueueSize = 64;
+    private Backpressure backpressure = Backpressure.BLOCK;
+    private int upstreamConnections = 8;
+    private int captureLimit = 256 * 1024 * 1024;
+    private int spillThreshold = 64 * 1024;
+    private boolean shareHeaders;
+    private boolean index;
+
+    // Number of threads extracting assertions from responses.
+    public Recorder extractionThreads(int extractionThreads) {
+        this.extractionThreads = extractionThreads;
+        return this;
+    }
+
+    // Number of responses which may wait for assertion extraction in memory.
+    public Recorder extractionQueueSize(int extractionQueueSize) {
+        this.extractionQueueSize = extractionQueueSize;
+        return this;
+    }
+
+    public Recorder backpressure(Backpressure backpressure) {
+        this.backpressure = backpressure;
+        return this;
+    }
+
+    // Number of idle connections to the app kept open for reuse by new client connections.
+    public Recorder upstreamConnections(int upstreamConnections) {
+        this.upstreamConnections = upstreamConnections;
+        return this;
+    }
+
+    // Largest body kept for recording. Larger bodies are only forwarded.
+    public Recorder captureLimit(int captureLimit) {
+        this.captureLimit = captureLimit;
+        return this;
+    }
+
+    // Bodies above this size are kept in temporary files instead of memory.
+    public Recorder spillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+        return this;
+    }
+
+    // Requests with the same headers refer to one set of headers in the XML file.
+    public Recorder shareHeaders(boolean shareHeaders) {
+        this.shareHeaders = shareHeaders;
+        return this;
+    }
+
+    // Uncompressed XML recordings get an index file next to them, named *.idx,
+    // for replaying parts of them with RecordedTest.subset.
+    public Recorder index(boolean index) {
+        this.index = index;
+        return this;
+    }
 
     public Recording open(int port, String startPath) throws Exception {
         System.out.printf("Recording on http://localhost:%d%s%n", port, startPath);
-        return new Recording(ServerSocketChannel.open().bind(new InetSocketAddress(port)));
+        return new Recording(ServerSocketChannel.open().bind(new InetSocketAddress(port)), this);
+    }
+
+    int extractionThreads() {
+        return extractionThreads;
+    }
+
+    int extractionQueueSize() {
+        return extractionQueueSize;
+    }
+
+    Backpressure backpressure() {
+        return backpressure;
+    }
+
+    int upstreamConnections() {
+        return upstreamConnections;
+    }
+
+    int captureLimit() {
+        return captureLimit;
+    }
+
+    int spillThreshold() {
+        return spillThreshold;
+    }
+
+    boolean shareHeaders() {
+        return shareHeaders;
+    }
+
+    boolean index() {
+        return index;
     }
 }
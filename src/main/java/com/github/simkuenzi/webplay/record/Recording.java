@@ -1,47 +1,55 @@
 package com.github.simkuenzi.webplay.record;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.HashMap;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.IntStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 
 public class Recording implements AutoCloseable {
-    private static final Pattern REQUEST_LINE_PATTERN = Pattern.compile("(\\H+)\\h*(\\H+).*");
-    private static final Pattern HEADER_PATTERN = Pattern.compile("(\\H+)\\h*:\\h*(.+)");
-    private static final Pattern CONTENT_TYPE_PATTERN = Pattern.compile("(\\H+?)(:?\\h*;\\h*(\\H+)=(\\H+))*");
-    private static final int HEADER_END_SEQ = 0x0d0a0d0a;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final List<String> TEXT_TYPES = List.of("application/x-www-form-urlencoded",
+            "application/json", "application/xml", "application/javascript");
 
     private final ServerSocketChannel serverSocket;
+    private final Recorder settings;
+    private final RecordingMetrics metrics = new RecordingMetrics();
 
     private Thread watcher;
     private volatile boolean running = true;
     private final CountDownLatch startupWaitHandle = new CountDownLatch(1);
 
     public Recording(ServerSocketChannel serverSocket) {
+        this(serverSocket, new Recorder());
+    }
+
+    Recording(ServerSocketChannel serverSocket, Recorder settings) {
         this.serverSocket = serverSocket;
+        this.settings = settings;
     }
 
     public synchronized void run(int portOfApp, Path outputFile, List<String> includedContentTypes, Path stopFile) throws Exception {
@@ -49,6 +57,7 @@ public class Recording implements AutoCloseable {
             if (watcher != null) {
                 throw new IllegalStateException("Method 'run' can only entered once.");
             }
+            ObjectName metricsName = register();
 
             Thread recorderThread = new Thread(() -> {
                 while (running) {
@@ -66,10 +75,19 @@ public class Recording implements AutoCloseable {
             watcher.setDaemon(true);
             watcher.start();
 
-            recorderThread.join();
+            try {
+                recorderThread.join();
+            } finally {
+                unregister(metricsName);
+            }
         }
     }
 
+    // The counters are also registered as MBean while the recording runs.
+    public RecordingMXBean metrics() {
+        return metrics;
+    }
+
     public void stop() throws Exception {
         startupWaitHandle.await();
         watcher.interrupt();
@@ -82,148 +100,278 @@ public class Recording implements AutoCloseable {
         stop();
     }
 
+    // Recordings to files named *.gz are compressed. Every flush of a completed request reaches the file.
+    private static OutputStream open(Path outputFile) throws IOException {
+        OutputStream file = new FileOutputStream(outputFile.toFile());
+        return outputFile.getFileName().toString().endsWith(".gz") ? new GZIPOutputStream(file, GZIP_BUFFER_SIZE, true) : file;
+    }
+
     private void acceptConnection(ServerSocketChannel serverSocket, int portOfApp, Path outputFile, List<String> includedContentTypes) throws Exception {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        try (Writer out = new OutputStreamWriter(buffer)) {
-            RequestBuilder requestBuilder = new XmlTest(out).test();
+        String name = outputFile.getFileName().toString();
+        // Recordings to files named *.wpb are written in the binary format. Only plain XML can be indexed.
+        boolean binary = name.replaceFirst("\\.gz$", "").endsWith(".wpb");
+        boolean indexed = settings.index() && !binary && !name.endsWith(".gz");
+        // A FileChannel would be closed for all connections if one of their threads was interrupted while writing.
+        try (OutputStream file = new BufferedOutputStream(open(outputFile), BUFFER_SIZE);
+             Writer text = new OutputStreamWriter(file, StandardCharsets.UTF_8);
+             Writer index = indexed ? Files.newBufferedWriter(outputFile.resolveSibling(name + ".idx")) : null) {
+            XmlTest xmlTest = new XmlTest(text).shareHeaders(settings.shareHeaders());
+            Test test = binary ? new BinaryTest(file) : index != null ? xmlTest.index(index) : xmlTest;
+            ExchangeSequence sequence = new ExchangeSequence(test.test());
+            AssertionExtraction extraction = new AssertionExtraction(sequence, metrics,
+                    settings.extractionThreads(), settings.extractionQueueSize(), settings.backpressure());
+            UpstreamPool upstreams = new UpstreamPool(new InetSocketAddress("localhost", portOfApp),
+                    settings.upstreamConnections(), BUFFER_SIZE);
+            CapturePool captures = new CapturePool(settings.captureLimit(), settings.spillThreshold());
+            ExecutorService connections = Executors.newCachedThreadPool();
+            Set<SocketChannel> clientSockets = ConcurrentHashMap.newKeySet();
             startupWaitHandle.countDown();
-            try (SocketChannel clientSocket = serverSocket.accept()) {
+            try {
                 while (running) {
-                    try (SocketChannel appSocket = SocketChannel.open(new InetSocketAddress("localhost", portOfApp))) {
-                        ClientToApp clientToApp = transfer(clientSocket, appSocket, requestBuilder,
-                                (builder, urlPath, method, headers, payload, mime) ->
-                                        new ClientToApp(builder, method, urlPath, headers, payload, mime));
-                        requestBuilder = transfer(appSocket, clientSocket, clientToApp,
-                                (builder, urlPath, method, headers, payload, mime) ->
-                                        clientToApp.request(payload, mime, includedContentTypes));
-                    }
+                    SocketChannel clientSocket = serverSocket.accept();
+                    metrics.accepted();
+                    clientSockets.add(clientSocket);
+                    connections.execute(() -> {
+                        proxy(clientSocket, upstreams, captures, sequence, extraction, includedContentTypes);
+                        clientSockets.remove(clientSocket);
+                    });
                 }
-            } catch (InterruptedException | ClosedByInterruptException e) {
+            } catch (AsynchronousCloseException e) {
                 // End thread nicely
+                Thread.interrupted();
+            } finally {
+                // Idle connections read the end of stream, exchanges in progress get 10 seconds to complete.
+                for (SocketChannel clientSocket : clientSockets) {
+                    try {
+                        clientSocket.shutdownInput();
+                    } catch (IOException e) {
+                        // Already closed
+                    }
+                }
+                connections.shutdown();
+                if (!connections.awaitTermination(10, TimeUnit.SECONDS)) {
+                    // Longer exchanges are broken off. They complete their step in the sequence as skipped,
+                    // so their threads have to end before extraction and sequence do.
+                    connections.shutdownNow();
+                    while (!connections.awaitTermination(10, TimeUnit.SECONDS)) {
+                        System.out.println("Waiting for connections to close.");
+                    }
+                }
+                upstreams.close();
+                extraction.close();
             }
 
-            requestBuilder.end();
-        }
-
-        // Pretty print
-        try (Writer writer = Files.newBufferedWriter(outputFile)) {
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            StreamResult result = new StreamResult(writer);
-            StreamSource source = new StreamSource(new ByteArrayInputStream(buffer.toByteArray()));
-            transformer.transform(source, result);
+            sequence.end();
         }
     }
 
-    private <I, O> O transfer(SocketChannel in, SocketChannel out, I requestBuilder, BuildAction<I, O> buildAction) throws Exception {
-        ByteArrayOutputStream headerBuffer = new ByteArrayOutputStream();
-        int endSeq = 0;
-        ByteBuffer singleByte = ByteBuffer.allocate(1);
-        do {
-            in.read(singleByte);
-            endSeq = (endSeq << 8) + singleByte.get(0);
-            headerBuffer.write(singleByte.get(0));
-            out.write(ByteBuffer.wrap(singleByte.array()));
-            singleByte.clear();
-        } while (endSeq != HEADER_END_SEQ);
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(headerBuffer.toByteArray())));
-
-        String method;
-        String urlPath;
-        String requestLine = reader.readLine();
-        Matcher requestLineMatcher = REQUEST_LINE_PATTERN.matcher(requestLine);
-        if (requestLineMatcher.matches()) {
-            method = requestLineMatcher.group(1);
-            urlPath = requestLineMatcher.group(2);
-        } else {
-            throw new Exception(String.format("Request line %s is not understood.", requestLine));
+    private void proxy(SocketChannel clientSocket, UpstreamPool upstreams, CapturePool captures, ExchangeSequence sequence, AssertionExtraction extraction, List<String> includedContentTypes) {
+        UpstreamPool.Upstream upstream = null;
+        try (clientSocket) {
+            InboundChannel fromClient = new InboundChannel(clientSocket, ByteBuffer.allocateDirect(BUFFER_SIZE));
+            // The connection to the app is kept for the lifetime of the client connection.
+            while (running && fromClient.awaitMessage()) {
+                if (upstream == null) {
+                    upstream = upstreams.acquire();
+                }
+                boolean reusable;
+                ExchangeEvent event = ExchangeEvent.start();
+                Instant timestamp = Instant.now();
+                try {
+                    ClientToApp clientToApp = transfer(fromClient, upstream.socket(), metrics.requests(), captures,
+                            (urlPath, method, headers) -> requestFraming(headers),
+                            mime -> true,
+                            (urlPath, method, version, headers, payload, mime, bytes, headReceived) -> {
+                                if (event != null) {
+                                    event.method = method;
+                                    event.urlPath = urlPath;
+                                    event.requestBytes = bytes;
+                                }
+                                return new ClientToApp(sequence.start(), method, urlPath, version, headers, payload, mime, timestamp);
+                            });
+                    try {
+                        reusable = transfer(upstream.in(), clientSocket, metrics.responses(), captures,
+                                (status, version, headers) -> responseFraming(clientToApp.method(), status, headers),
+                                mime -> clientToApp.captured() && clientToApp.included(mime, includedContentTypes),
+                                (status, version, reason, headers, payload, mime, bytes, headReceived) -> {
+                                    clientToApp.responded(headReceived);
+                                    boolean recorded = clientToApp.captured() && clientToApp.included(mime, includedContentTypes);
+                                    metrics.exchanged(recorded);
+                                    if (event != null && event.shouldCommit()) {
+                                        event.status = status;
+                                        event.responseBytes = bytes;
+                                        event.recorded = recorded;
+                                        event.commit();
+                                    }
+                                    if (!clientToApp.included(mime, includedContentTypes)) {
+                                        sequence.complete(clientToApp.index(), clientToApp.skipped());
+                                    } else if (!clientToApp.captured()) {
+                                        System.out.printf("Request payload of %s %s exceeds the capture limit and is not recorded.%n",
+                                                clientToApp.method(), clientToApp.urlPath());
+                                        sequence.complete(clientToApp.index(), clientToApp.skipped());
+                                    } else if (payload == null) {
+                                        // The response is too large to look for assertions.
+                                        sequence.complete(clientToApp.index(), clientToApp.withoutAssertions());
+                                    } else {
+                                        extraction.submit(clientToApp, payload);
+                                    }
+                                    return !clientToApp.closesConnection() && reusable(version, headers);
+                                });
+                    } catch (Exception e) {
+                        sequence.complete(clientToApp.index(), clientToApp.skipped());
+                        throw e;
+                    }
+                } catch (Exception e) {
+                    // An exchange broken off leaves the connection to the app in an unknown state.
+                    upstream.close();
+                    upstream = null;
+                    throw e;
+                }
+                boolean ended = upstream.in().ended();
+                if (!reusable || ended) {
+                    upstream.close();
+                    upstream = null;
+                }
+                if (ended) {
+                    // The end of the response was only marked by closing the connection. The same goes for the client.
+                    break;
+                }
+            }
+        } catch (EOFException | AsynchronousCloseException e) {
+            // Connection closed by the client or by stopping the recorder.
+        } catch (Exception e) {
+            // Only this connection is lost. The other connections keep recording.
+            e.printStackTrace();
+        } finally {
+            if (upstream != null) {
+                upstreams.release(upstream);
+            }
         }
+    }
 
-        Map<String, String> headers = new HashMap<>();
-        String headerLine;
-        while ((headerLine = reader.readLine()) != null) {
-            if (!headerLine.isEmpty()) {
-                Matcher matcher = HEADER_PATTERN.matcher(headerLine);
-                if (matcher.matches()) {
-                    headers.put(matcher.group(1), matcher.group(2));
-                } else {
-                    throw new Exception(String.format("Header line %s is not understood.", headerLine));
+    <O> O transfer(InboundChannel in, GatheringByteChannel out, RecordingMetrics.Traffic traffic, CapturePool captures, Framer framer, Predicate<String> captured, BuildAction<O> buildAction) throws Exception {
+        ByteBuffer head = in.readHead();
+        long headReceived = System.nanoTime();
+        traffic.received(head.remaining());
+        MessageHead message = MessageHead.parse(head);
+        String method = message.first();
+        String urlPath = message.second();
+        String version = message.third();
+        Headers headers = message.headers();
+        String mime = message.mime();
+        String charset = message.charset();
+
+        BodyFraming framing = framer.framing(urlPath, method, headers);
+        Capture capture = captures.capture(captured.test(mime));
+
+        // The body is forwarded as it arrives. Bytes read past the header are forwarded together with the header.
+        Payload payload;
+        long bytes = 0;
+        try {
+            ByteBuffer pending = head;
+            while (!framing.done()) {
+                if (!in.hasBuffered()) {
+                    bytes += forward(out, traffic, headReceived, pending, EMPTY);
+                    if (!in.receive()) {
+                        if (framing.endsWithClose()) {
+                            break;
+                        }
+                        throw new EOFException("Channel closed before end of payload.");
+                    }
                 }
+                bytes += forward(out, traffic, headReceived, pending, in.take(framing.consume(in.buffered(), capture)));
             }
+            bytes += forward(out, traffic, headReceived, pending, EMPTY);
+            payload = capture.payload(charset, charset == null && !textual(mime));
+        } catch (Exception e) {
+            capture.discard();
+            throw e;
         }
 
-        int contentLength = headers.entrySet().stream()
-                .filter(e -> e.getKey().toLowerCase().equals("content-length"))
-                .findFirst()
-                .map(e -> Integer.parseInt(e.getValue()))
-                .orElse(0);
-
-        String contentType = headers.entrySet().stream()
-                .filter(e -> e.getKey().toLowerCase().equals("content-type"))
-                .findFirst().map(Map.Entry::getValue).orElse("");
-
-        String mime;
-        String charset;
-        Matcher matcher = CONTENT_TYPE_PATTERN.matcher(contentType);
-        Charset utf8 = StandardCharsets.UTF_8;
-
-        if (matcher.matches()) {
-            mime = matcher.group(1);
-            charset = IntStream.range(2, matcher.groupCount() - 1)
-                    .filter(i -> matcher.group(i) != null)
-                    .filter(i -> matcher.group(i).equals("charset"))
-                    .mapToObj(i -> matcher.group(i + 1))
-                    .findFirst().orElse(utf8.name());
+        return buildAction.build(urlPath, method, version, headers, payload, mime, bytes, headReceived);
+    }
+
+    // Bodies of other types are kept as they are and never decoded.
+    private static boolean textual(String mime) {
+        return mime.startsWith("text/") || TEXT_TYPES.contains(mime) || mime.endsWith("+xml") || mime.endsWith("+json");
+    }
+
+    static BodyFraming requestFraming(Headers headers) {
+        String contentLength = headers.get("Content-Length");
+        if (chunked(headers)) {
+            return BodyFraming.chunked();
+        } else if (contentLength != null) {
+            return BodyFraming.fixed(Long.parseLong(contentLength.trim()));
         } else {
-            mime = "";
-            charset = utf8.name();
+            return BodyFraming.none();
         }
+    }
 
-        String payloadText;
-        if (contentLength > 0) {
-            ByteBuffer payload = ByteBuffer.allocate(contentLength);
-            in.read(payload);
-            payloadText = new String(payload.array(), charset);
-            out.write(ByteBuffer.wrap(payload.array()));
+    static BodyFraming responseFraming(String requestMethod, String status, Headers headers) {
+        String contentLength = headers.get("Content-Length");
+        if (requestMethod.equals("HEAD") || status.startsWith("1") || status.equals("204") || status.equals("304")) {
+            return BodyFraming.none();
+        } else if (chunked(headers)) {
+            return BodyFraming.chunked();
+        } else if (contentLength != null) {
+            return BodyFraming.fixed(Long.parseLong(contentLength.trim()));
         } else {
-            payloadText = "";
+            return BodyFraming.untilClose();
         }
+    }
+
+    private static boolean chunked(Headers headers) {
+        // Chunked is always the last transfer coding.
+        String transferEncoding = headers.get("Transfer-Encoding");
+        return transferEncoding != null && transferEncoding.trim().toLowerCase(Locale.ROOT).endsWith("chunked");
+    }
 
-        return buildAction.build(requestBuilder, urlPath, method, headers, payloadText, mime);
+    // The connection to the app is closed after responses marking this.
+    private static boolean reusable(String version, Headers headers) {
+        return !version.equals("HTTP/1.0") && !headers.contains("Connection", "close");
     }
 
-    private static class ClientToApp {
-        private final RequestBuilder requestBuilder;
-        private final String method;
-        private final String urlPath;
-        private final Map<String, String> headers;
-        private final String payload;
-        private final String mime;
-
-        public ClientToApp(RequestBuilder requestBuilder, String method, String urlPath, Map<String, String> headers, String payload, String mime) {
-            this.requestBuilder = requestBuilder;
-            this.method = method;
-            this.urlPath = urlPath;
-            this.headers = headers;
-            this.payload = payload;
-            this.mime = mime;
+    // The head is pending until it has been written with the first body bytes. Its latency is taken then.
+    private static long forward(GatheringByteChannel out, RecordingMetrics.Traffic traffic, long headReceived, ByteBuffer pending, ByteBuffer body) throws IOException {
+        boolean headPending = pending.hasRemaining();
+        traffic.received(body.remaining());
+        long written = writeFully(out, pending, body);
+        traffic.forwarded(written);
+        if (headPending) {
+            traffic.headForwarded(System.nanoTime() - headReceived);
         }
+        return written;
+    }
 
-        public RequestBuilder request(String serverPayload, String serverMime, List<String> includedContentTypes) throws Exception {
-            if (includedContentTypes.contains(serverMime) || includedContentTypes.contains(mime)) {
-                AssertionBuilder assertionBuilder = requestBuilder.request(urlPath, method, headers, payload);
-                Document document = Jsoup.parse(serverPayload);
-                for (Element input : document.select("input")) {
-                    assertionBuilder = assertionBuilder.assertion("value", input.val(), String.format("input[name=%s]", input.attr("name")));
-                }
-                for (Element textarea : document.select("textarea")) {
-                    assertionBuilder = assertionBuilder.assertion(textarea.text(), String.format("textarea[name=%s]", textarea.attr("name")));
-                }
-                return assertionBuilder;
+    private static long writeFully(GatheringByteChannel out, ByteBuffer... buffers) throws IOException {
+        long total = Arrays.stream(buffers).mapToLong(ByteBuffer::remaining).sum();
+        long remaining = total;
+        while (remaining > 0) {
+            remaining -= out.write(buffers);
+        }
+        return total;
+    }
+
+    private ObjectName register() {
+        try {
+            ObjectName name = new ObjectName("com.github.simkuenzi.webplay:type=Recording,port=" + serverSocket.socket().getLocalPort());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        } catch (JMException e) {
+            // Recording works without metrics.
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void unregister(ObjectName name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (name != null && server.isRegistered(name)) {
+                server.unregisterMBean(name);
             }
-            return requestBuilder;
+        } catch (JMException e) {
+            e.printStackTrace();
         }
     }
 
@@ -266,7 +414,13 @@ public class Recording implements AutoCloseable {
     }
 
 
-    interface BuildAction<I, O> {
-        O build(I builder, String urlPath, String method, Map<String, String> headers, String payload, String mime) throws Exception;
+    interface Framer {
+        BodyFraming framing(String urlPath, String method, Headers headers);
+    }
+
+    // The start line of a response holds version, status and reason instead of method, path and version.
+    interface BuildAction<O> {
+        // The bytes of head and body forwarded. The head was received at headReceived, as given by System.nanoTime.
+        O build(String urlPath, String method, String version, Headers headers, Payload payload, String mime, long bytes, long headReceived) throws Exception;
     }
 }
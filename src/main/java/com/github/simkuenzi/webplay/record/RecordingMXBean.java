@@ -0,0 +1,35 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.util.Map;
+
+// Live counters of a running recording, registered as com.github.simkuenzi.webplay:type=Recording,port=<port>.
+// Percentiles are given as p50, p90, p99 and max.
+public interface RecordingMXBean {
+    long getAcceptedConnections();
+
+    long getExchanges();
+
+    // Exchanges recorded because their response has one of the included content types.
+    long getCapturedExchanges();
+
+    // Exchanges not recorded because of their content type or the capture limit.
+    long getSkippedExchanges();
+
+    long getBytesFromClient();
+
+    long getBytesToApp();
+
+    long getBytesFromApp();
+
+    long getBytesToClient();
+
+    long getExtractions();
+
+    Map<String, Double> getExtractionMillis();
+
+    // Time from receiving the head of a request until it is forwarded to the app.
+    Map<String, Double> getRequestLatencyMillis();
+
+    // Time from receiving the head of a response until it is forwarded to the client.
+    Map<String, Double> getResponseLatencyMillis();
+}
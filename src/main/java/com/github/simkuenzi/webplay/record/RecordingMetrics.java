@@ -0,0 +1,127 @@
+package com.github.simkuenzi.webplay.record;
+
+import com.github.simkuenzi.webplay.stats.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters are only added to on the proxy threads. Sums and percentiles are computed when they are read.
+class RecordingMetrics implements RecordingMXBean {
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder exchanges = new LongAdder();
+    private final LongAdder capturedExchanges = new LongAdder();
+    private final LongAdder skippedExchanges = new LongAdder();
+    private final Histogram extraction = new Histogram();
+    private final Traffic requests = new Traffic();
+    private final Traffic responses = new Traffic();
+
+    void accepted() {
+        acceptedConnections.increment();
+    }
+
+    void exchanged(boolean captured) {
+        exchanges.increment();
+        (captured ? capturedExchanges : skippedExchanges).increment();
+    }
+
+    void extracted(long nanos) {
+        extraction.record(nanos);
+    }
+
+    Traffic requests() {
+        return requests;
+    }
+
+    Traffic responses() {
+        return responses;
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    @Override
+    public long getExchanges() {
+        return exchanges.sum();
+    }
+
+    @Override
+    public long getCapturedExchanges() {
+        return capturedExchanges.sum();
+    }
+
+    @Override
+    public long getSkippedExchanges() {
+        return skippedExchanges.sum();
+    }
+
+    @Override
+    public long getBytesFromClient() {
+        return requests.received.sum();
+    }
+
+    @Override
+    public long getBytesToApp() {
+        return requests.forwarded.sum();
+    }
+
+    @Override
+    public long getBytesFromApp() {
+        return responses.received.sum();
+    }
+
+    @Override
+    public long getBytesToClient() {
+        return responses.forwarded.sum();
+    }
+
+    @Override
+    public long getExtractions() {
+        return extraction.count();
+    }
+
+    @Override
+    public Map<String, Double> getExtractionMillis() {
+        return millis(extraction);
+    }
+
+    @Override
+    public Map<String, Double> getRequestLatencyMillis() {
+        return millis(requests.latency);
+    }
+
+    @Override
+    public Map<String, Double> getResponseLatencyMillis() {
+        return millis(responses.latency);
+    }
+
+    private static Map<String, Double> millis(Histogram histogram) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", histogram.percentile(50) / 1e6);
+        percentiles.put("p90", histogram.percentile(90) / 1e6);
+        percentiles.put("p99", histogram.percentile(99) / 1e6);
+        percentiles.put("max", histogram.max() / 1e6);
+        return percentiles;
+    }
+
+    // The messages of one direction.
+    static class Traffic {
+        private final LongAdder received = new LongAdder();
+        private final LongAdder forwarded = new LongAdder();
+        private final Histogram latency = new Histogram();
+
+        void received(long bytes) {
+            received.add(bytes);
+        }
+
+        void forwarded(long bytes) {
+            forwarded.add(bytes);
+        }
+
+        void headForwarded(long nanos) {
+            latency.record(nanos);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.github.simkuenzi.webplay.record;
 
-import java.util.Map;
-
 public interface RequestBuilder extends TestBuilder {
-    AssertionBuilder request(String urlPath, String method, Map<String, String> headers, String payload) throws Exception;
+    AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload) throws Exception;
+
+    // The timing is null if it has not been recorded. Builders which do not keep it ignore it.
+    default AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload, ExchangeTiming timing) throws Exception {
+        return request(urlPath, method, headers, payload);
+    }
 }
@@ -0,0 +1,88 @@
+package com.github.simkuenzi.webplay.record;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+// Keeps idle connections to the app open, so that exchanges do not pay a new connect each.
+class UpstreamPool implements AutoCloseable {
+    private final InetSocketAddress app;
+    private final int bufferSize;
+    private final BlockingDeque<Upstream> idle;
+
+    UpstreamPool(InetSocketAddress app, int size, int bufferSize) {
+        this.app = app;
+        this.bufferSize = bufferSize;
+        this.idle = new LinkedBlockingDeque<>(Math.max(1, size));
+    }
+
+    Upstream acquire() throws IOException {
+        Upstream upstream;
+        while ((upstream = idle.pollFirst()) != null) {
+            if (upstream.alive()) {
+                return upstream;
+            }
+            upstream.close();
+        }
+        return new Upstream(SocketChannel.open(app), ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    // Only connections which ended their last exchange cleanly may be released.
+    void release(Upstream upstream) {
+        if (!idle.offerFirst(upstream)) {
+            upstream.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        Upstream upstream;
+        while ((upstream = idle.pollFirst()) != null) {
+            upstream.close();
+        }
+    }
+
+    static class Upstream {
+        private final SocketChannel socket;
+        private final InboundChannel in;
+
+        private Upstream(SocketChannel socket, ByteBuffer buffer) {
+            this.socket = socket;
+            this.in = new InboundChannel(socket, buffer);
+        }
+
+        SocketChannel socket() {
+            return socket;
+        }
+
+        InboundChannel in() {
+            return in;
+        }
+
+        // The app may have closed an idle connection in the meantime.
+        // Nothing is expected from an idle connection, so anything readable means it is unusable.
+        private boolean alive() {
+            try {
+                socket.configureBlocking(false);
+                try {
+                    return socket.read(ByteBuffer.allocate(1)) == 0;
+                } finally {
+                    socket.configureBlocking(true);
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Evicted anyway
+            }
+        }
+    }
+}
@@ -3,21 +3,49 @@ package com.github.simkuenzi.webplay.record;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
 import java.io.Writer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 public class XmlTest implements Test {
     private final Writer out;
+    private final Map<List<String>, Integer> headerSets = new HashMap<>();
+    private boolean shareHeaders;
+    private IndexWriter index;
+    private String urlPath;
+    private String headerSet;
 
     public XmlTest(Writer out) {
         this.out = out;
     }
 
+    // Requests with the same headers refer to one set of headers, written before the first of them.
+    public XmlTest shareHeaders(boolean shareHeaders) {
+        this.shareHeaders = shareHeaders;
+        return this;
+    }
+
+    // The byte offsets of the requests are written to index, so that parts of the recording can be read
+    // without reading all of it. The recording must be written as UTF-8.
+    public XmlTest index(Writer index) {
+        this.index = new IndexWriter(index);
+        return this;
+    }
+
     @Override
-    public RequestBuilder test() throws XMLStreamException {
-        XMLStreamWriter writer = XMLOutputFactory.newFactory().createXMLStreamWriter(out);
-        writer.writeStartDocument();
+    public RequestBuilder test() throws Exception {
+        Writer target = index != null ? index.counting(out) : out;
+        XMLStreamWriter writer = new IndentingXMLStreamWriter(XMLOutputFactory.newFactory().createXMLStreamWriter(target));
+        writer.writeStartDocument("UTF-8", "1.0");
         writeTestStart(writer);
+        if (index != null) {
+            writer.flush();
+        }
         return new XmlRequestBuilder(writer);
     }
 
@@ -25,31 +53,95 @@ public class XmlTest implements Test {
         writer.writeStartElement("test");
     }
 
-    private void writeTestEnd(XMLStreamWriter writer) throws XMLStreamException {
+    private void writeTestEnd(XMLStreamWriter writer) throws XMLStreamException, IOException {
         writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
+        if (index != null) {
+            index.end();
+        }
     }
 
-    private void writeRequestStart(XMLStreamWriter writer, String urlPath, String method, Map<String, String> headers, String payload) throws XMLStreamException {
+    private void writeRequestStart(XMLStreamWriter writer, String urlPath, String method, Headers headers, Payload payload, ExchangeTiming timing) throws Exception {
+        String headerSet = shareHeaders ? headerSet(writer, headers) : null;
+        if (index != null) {
+            this.urlPath = urlPath;
+            this.headerSet = headerSet;
+            index.elementStart();
+        }
         writer.writeStartElement("request");
         writer.writeAttribute("urlPath", urlPath);
         writer.writeAttribute("method", method);
+        if (timing != null) {
+            // Durations in milliseconds
+            writer.writeAttribute("timestamp", timing.timestamp().toString());
+            writer.writeAttribute("timeToFirstByte", millis(timing.timeToFirstByte()));
+            writer.writeAttribute("responseTime", millis(timing.responseTime()));
+        }
 
-        for (Map.Entry<String, String> header : headers.entrySet()) {
-            writer.writeEmptyElement("header");
-            writer.writeAttribute("name", header.getKey());
-            writer.writeAttribute("value", header.getValue());
+        if (headerSet != null) {
+            writer.writeAttribute("headers", headerSet);
+        } else {
+            writeHeaders(writer, headers);
         }
 
         if (!payload.isEmpty()) {
             writer.writeStartElement("payload");
             writer.writeAttribute("xml:space", "preserve");
-            writer.writeCharacters(payload);
+            if (payload.binary()) {
+                writer.writeAttribute("encoding", "base64");
+                payload.base64(writer::writeCharacters);
+            } else {
+                payload.decode(writer::writeCharacters);
+            }
             writer.writeEndElement();
         }
     }
 
-    private void writeRequestEnd(XMLStreamWriter writer) throws XMLStreamException {
+    private static String millis(Duration duration) {
+        return String.format(Locale.ROOT, "%.3f", duration.toNanos() / 1e6);
+    }
+
+    private String headerSet(XMLStreamWriter writer, Headers headers) throws XMLStreamException, IOException {
+        List<String> key = new ArrayList<>(headers.size() * 2);
+        for (Headers.Header header : headers) {
+            key.add(header.name());
+            key.add(header.value());
+        }
+        Integer id = headerSets.get(key);
+        if (id == null) {
+            id = headerSets.size();
+            headerSets.put(key, id);
+            if (index != null) {
+                index.elementStart();
+            }
+            writer.writeStartElement("headers");
+            writer.writeAttribute("id", id.toString());
+            writeHeaders(writer, headers);
+            writer.writeEndElement();
+            if (index != null) {
+                writer.flush();
+                index.headers(id.toString());
+            }
+        }
+        return id.toString();
+    }
+
+    private void writeHeaders(XMLStreamWriter writer, Headers headers) throws XMLStreamException {
+        for (Headers.Header header : headers) {
+            writer.writeEmptyElement("header");
+            writer.writeAttribute("name", header.name());
+            writer.writeAttribute("value", header.value());
+        }
+    }
+
+    // Every completed request is flushed, so that an interrupted recording leaves a usable file.
+    private void writeRequestEnd(XMLStreamWriter writer) throws XMLStreamException, IOException {
         writer.writeEndElement();
+        writer.flush();
+        if (index != null) {
+            index.request(urlPath, headerSet);
+        }
     }
 
     private void writeAssertion(XMLStreamWriter writer, String expectedText, String selector) throws XMLStreamException {
@@ -81,13 +173,18 @@ public class XmlTest implements Test {
         }
 
         @Override
-        public AssertionBuilder request(String urlPath, String method, Map<String, String> headers, String payload) throws XMLStreamException {
-            writeRequestStart(writer, urlPath, method, headers, payload);
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload) throws Exception {
+            return request(urlPath, method, headers, payload, null);
+        }
+
+        @Override
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload, ExchangeTiming timing) throws Exception {
+            writeRequestStart(writer, urlPath, method, headers, payload, timing);
             return new XmlAssertionBuilder(writer);
         }
 
         @Override
-        public void end() throws XMLStreamException {
+        public void end() throws XMLStreamException, IOException {
             writeTestEnd(writer);
         }
     }
@@ -113,9 +210,14 @@ public class XmlTest implements Test {
         }
 
         @Override
-        public AssertionBuilder request(String urlPath, String method, Map<String, String> headers, String payload) throws Exception {
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload) throws Exception {
+            return request(urlPath, method, headers, payload, null);
+        }
+
+        @Override
+        public AssertionBuilder request(String urlPath, String method, Headers headers, Payload payload, ExchangeTiming timing) throws Exception {
             writeRequestEnd(writer);
-            writeRequestStart(writer, urlPath, method, headers, payload);
+            writeRequestStart(writer, urlPath, method, headers, payload, timing);
             return new XmlAssertionBuilder(writer);
         }
 
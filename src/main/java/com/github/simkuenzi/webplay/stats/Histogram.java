@@ -0,0 +1,106 @@
+package com.github.simkuenzi.webplay.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Thread-safe histogram of non-negative values with a fixed memory footprint.
+// Buckets grow logarithmically, each power of two is split into 8 sub-buckets. Percentiles are therefore
+// reported with a relative error of at most 12.5%. The sub-buckets of a power of two are only allocated once a
+// value falls into it, so a histogram with few distinct magnitudes stays small.
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicReferenceArray<AtomicLongArray> counts = new AtomicReferenceArray<>(BUCKETS / SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        int index = index(recorded);
+        counts(index).incrementAndGet(index % SUB_BUCKETS);
+        count.increment();
+        sum.add(recorded);
+        max.accumulate(recorded);
+    }
+
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = other.count(i);
+            if (bucketCount > 0) {
+                counts(i).addAndGet(i % SUB_BUCKETS, bucketCount);
+            }
+        }
+        count.add(other.count());
+        sum.add(other.sum.sum());
+        max.accumulate(other.max());
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long total = count();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    // Returns the upper bound of the bucket containing the given percentile, capped by the maximum.
+    public long percentile(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += count(i);
+            if (seen >= rank) {
+                return Math.min(lowerBound(i + 1) - 1, max());
+            }
+        }
+        return max();
+    }
+
+    private long count(int index) {
+        AtomicLongArray subBuckets = counts.get(index / SUB_BUCKETS);
+        return subBuckets == null ? 0 : subBuckets.get(index % SUB_BUCKETS);
+    }
+
+    private AtomicLongArray counts(int index) {
+        AtomicLongArray subBuckets = counts.get(index / SUB_BUCKETS);
+        if (subBuckets == null) {
+            counts.compareAndSet(index / SUB_BUCKETS, null, new AtomicLongArray(SUB_BUCKETS));
+            subBuckets = counts.get(index / SUB_BUCKETS);
+        }
+        return subBuckets;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        if (index >= BUCKETS) {
+            return Long.MAX_VALUE;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+}
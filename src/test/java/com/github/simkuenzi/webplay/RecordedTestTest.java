@@ -1,14 +1,48 @@
 package com.github.simkuenzi.webplay;
 
+import com.github.simkuenzi.webplay.play.ArrivalReport;
+import com.github.simkuenzi.webplay.play.Load;
+import com.github.simkuenzi.webplay.play.Pacing;
+import com.github.simkuenzi.webplay.play.Player;
+import com.github.simkuenzi.webplay.play.Rate;
 import com.github.simkuenzi.webplay.play.RecordedTest;
+import com.github.simkuenzi.webplay.play.Report;
+import com.github.simkuenzi.webplay.play.ScenarioConverter;
+import com.github.simkuenzi.webplay.play.StepStatistics;
+import com.github.simkuenzi.webplay.record.BinaryFormat;
+import com.github.simkuenzi.webplay.record.Headers;
+import com.github.simkuenzi.webplay.record.Payload;
+import com.github.simkuenzi.webplay.record.RequestBuilder;
+import com.github.simkuenzi.webplay.record.XmlTest;
 import io.javalin.Javalin;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
 import org.junit.Test;
+import org.xmlunit.builder.Input;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.xmlunit.matchers.CompareMatcher.isIdenticalTo;
 
 public class RecordedTestTest {
 
@@ -49,4 +83,386 @@ public class RecordedTestTest {
 
         assertEquals(2, assertions.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStreaming() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-get.xml"));
+        String html = "<html><body><input name='myTextfield' value='wrong' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        List<String> assertions = new ArrayList<>();
+        try {
+            recordedTest.playStreaming("http://localhost:" + PORT_OF_APP + "/", (message, expected, actual) -> {
+                assertions.add(message);
+                assertTrue(message, actual.equals(expected) || actual.equals("wrong"));
+            });
+        } finally {
+            app.stop();
+        }
+
+        assertEquals(2, assertions.size());
+    }
+
+    @Test
+    public void testSharedPlayer() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-get.xml"));
+        String html = "<html><body><input name='myTextfield' value='textValue' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        Player player = Player.builder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        List<String> assertions = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                recordedTest.play("http://localhost:" + PORT_OF_APP + "/", player, (message, expected, actual) -> {
+                    assertions.add(message);
+                    assertEquals(message, expected, actual);
+                });
+            }
+        } finally {
+            app.stop();
+        }
+
+        assertEquals(6, assertions.size());
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-get.xml"));
+        String html = "<html><body><input name='myTextfield' value='wrong' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        Report report;
+        try {
+            report = recordedTest.load("http://localhost:" + PORT_OF_APP + "/", Player.newPlayer(),
+                    Load.users(3).rampUp(Duration.ofMillis(300)).iterations(2));
+        } finally {
+            app.stop();
+        }
+
+        assertEquals(6, report.iterations());
+        assertEquals(1, report.steps().size());
+        StepStatistics step = report.steps().get(0);
+        assertEquals("/", step.urlPath());
+        assertEquals(6, step.latency().count());
+        assertEquals(6, step.failures());
+        assertEquals(0, step.errors());
+    }
+
+    @Test
+    public void testParsedOnce() throws Exception {
+        URL resource = getClass().getResource("recorded-get.xml");
+        AtomicInteger opened = new AtomicInteger();
+        URL counted = new URL(null, resource.toString(), new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) throws IOException {
+                opened.incrementAndGet();
+                return resource.openConnection();
+            }
+        });
+        RecordedTest recordedTest = new RecordedTest(counted);
+        String html = "<html><body><input name='myTextfield' value='textValue' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        try {
+            for (int i = 0; i < 2; i++) {
+                recordedTest.play("http://localhost:" + PORT_OF_APP + "/", Assert::assertEquals);
+            }
+        } finally {
+            app.stop();
+        }
+
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    public void testArrivalRate() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-get.xml"));
+        String html = "<html><body><input name='myTextfield' value='textValue' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        ArrivalReport report;
+        try {
+            report = recordedTest.load("http://localhost:" + PORT_OF_APP + "/", Player.newPlayer(),
+                    Rate.perSecond(20, Duration.ofSeconds(1)).maxConcurrency(4));
+        } finally {
+            app.stop();
+        }
+
+        // One iteration every 50ms, each of them is completed.
+        assertEquals(20, report.iterations());
+        assertEquals(20, report.targetRate(), 0);
+        assertTrue(report.sendRate() > 0 && report.sendRate() <= report.targetRate());
+        assertEquals(1 - report.sendRate() / report.targetRate(), report.shortfall(), 1e-9);
+        assertEquals(20, report.startLag().count());
+        assertEquals(20, report.iterationLatency().count());
+        assertTrue(report.iterationLatency().max() > 0);
+        assertEquals(20, report.steps().get(0).latency().count());
+        assertEquals(0, report.missed());
+    }
+
+    @Test
+    public void testArrivalRateSaturated() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-get.xml"));
+        String html = "<html><body><input name='myTextfield' value='textValue' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> {
+            Thread.sleep(200);
+            ctx.html(html);
+        });
+        ArrivalReport report;
+        long start = System.nanoTime();
+        try {
+            report = recordedTest.load("http://localhost:" + PORT_OF_APP + "/", Player.newPlayer(),
+                    Rate.perSecond(50, Duration.ofSeconds(1)).maxConcurrency(1));
+        } finally {
+            app.stop();
+        }
+
+        // One worker completes about five iterations. The others are missed instead of being sent after the duration.
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(3)) < 0);
+        assertTrue(report.missed() > 0);
+        assertEquals(50, report.iterations() + report.missed());
+        assertEquals(50, report.startLag().count());
+        assertTrue(report.shortfall() > 0.5);
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-get.xml"));
+        String html = "<html><body><input name='myTextfield' value='textValue' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        Report report;
+        try {
+            report = recordedTest.play("http://localhost:" + PORT_OF_APP + "/", Assert::assertEquals);
+        } finally {
+            app.stop();
+        }
+
+        assertEquals(1, report.steps().get(0).timeToFirstByte().count());
+        StringWriter csv = new StringWriter();
+        report.writeCsv(csv);
+        assertEquals(5, csv.toString().lines().count());
+        assertTrue(csv.toString().lines().skip(1).allMatch(line -> line.startsWith("0,GET,/,")));
+        StringWriter json = new StringWriter();
+        report.writeJson(json);
+        assertTrue(json.toString().contains("\"urlPath\":\"/\""));
+    }
+
+    @Test
+    public void testPacing() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-timed.xml"));
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        Report paced;
+        try {
+            paced = recordedTest.pacing(Pacing.scaled(2)).play("http://localhost:" + PORT_OF_APP + "/", Assert::assertEquals);
+        } finally {
+            app.stop();
+        }
+
+        // The requests have been recorded 600ms apart in total.
+        assertTrue(paced.elapsed().toMillis() >= 300);
+        assertEquals(8_250_000, paced.steps().get(1).recordedTimeToFirstByte().max());
+        StringWriter csv = new StringWriter();
+        paced.writeCsv(csv);
+        assertTrue(csv.toString().contains("recordedResponseTime"));
+    }
+
+    @Test
+    public void testMissingElement() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-get.xml"));
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        List<String> missing = new ArrayList<>();
+        try {
+            recordedTest.play("http://localhost:" + PORT_OF_APP + "/", (message, expected, actual) -> {
+                if (actual == null) {
+                    missing.add(message);
+                } else {
+                    assertEquals(message, expected, actual);
+                }
+            });
+        } finally {
+            app.stop();
+        }
+
+        assertEquals(1, missing.size());
+        assertTrue(missing.get(0).contains("textarea[name=myTextarea]"));
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-truncated.xml"));
+        String html = "<html><body><input name='myTextfield' value='textValue' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        List<String> assertions = new ArrayList<>();
+        try {
+            recordedTest.play("http://localhost:" + PORT_OF_APP + "/", (message, expected, actual) -> {
+                assertions.add(message);
+                assertEquals(message, expected, actual);
+            });
+        } finally {
+            app.stop();
+        }
+
+        assertEquals(2, assertions.size());
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        RecordedTest recordedTest = new RecordedTest(getClass().getResource("recorded-get.xml"));
+        String html = "<html><body><input name='myTextfield' value='wrong' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        Path dump = Files.createTempFile("webplay", ".jfr");
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+            recording.enable("com.github.simkuenzi.webplay.Replay");
+            recording.enable("com.github.simkuenzi.webplay.Assertions");
+            recording.enable("com.github.simkuenzi.webplay.Exchange");
+            recording.start();
+            TestFs.use(testFs -> {
+                TestEnv testEnv = new TestEnv(testFs);
+                testEnv.record(() -> {
+                    HttpRequest request = HttpRequest.newBuilder().GET().uri(testEnv.recorderUri()).build();
+                    assertEquals(html, HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString()).body());
+                });
+            });
+            recordedTest.play("http://localhost:" + PORT_OF_APP + "/", (message, expected, actual) -> {});
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            RecordedEvent exchange = events.stream().filter(e -> e.getEventType().getName().endsWith("Exchange")).findFirst().orElseThrow();
+            assertEquals("/", exchange.getString("urlPath"));
+            assertEquals("200", exchange.getString("status"));
+            assertTrue(exchange.getBoolean("recorded"));
+            // Head and body
+            assertTrue(exchange.getLong("responseBytes") > html.length());
+            RecordedEvent replay = events.stream().filter(e -> e.getEventType().getName().endsWith("Replay")).findFirst().orElseThrow();
+            assertEquals("/", replay.getString("urlPath"));
+            assertEquals(200, replay.getInt("status"));
+            assertEquals(html.length(), replay.getLong("responseBytes"));
+            RecordedEvent assertions = events.stream().filter(e -> e.getEventType().getName().endsWith("Assertions")).findFirst().orElseThrow();
+            assertEquals(2, assertions.getInt("assertions"));
+            assertEquals(1, assertions.getInt("failures"));
+        } finally {
+            app.stop();
+            Files.delete(dump);
+        }
+    }
+
+    @Test
+    public void testBinaryFormat() throws Exception {
+        Path xml = Path.of(getClass().getResource("recorded-get.xml").toURI());
+        Path binary = Files.createTempFile("webplay", ".wpb");
+        Path converted = Files.createTempFile("webplay", ".xml");
+        String html = "<html><body><input name='myTextfield' value='wrong' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        List<String> assertions = new ArrayList<>();
+        try {
+            ScenarioConverter.toBinary(xml, binary);
+            assertTrue(Files.size(binary) < Files.size(xml));
+            new RecordedTest(binary).play("http://localhost:" + PORT_OF_APP + "/", (message, expected, actual) -> {
+                assertions.add(message);
+                assertTrue(message, actual.equals(expected) || actual.equals("wrong"));
+            });
+
+            ScenarioConverter.toXml(binary, converted);
+            assertThat(Input.fromFile(converted.toFile()), isIdenticalTo(Input.fromFile(xml.toFile())).ignoreWhitespace());
+        } finally {
+            app.stop();
+            Files.delete(binary);
+            Files.delete(converted);
+        }
+
+        assertEquals(2, assertions.size());
+    }
+
+    @Test
+    public void testBinaryStringTable() throws Exception {
+        Path xml = Files.createTempFile("webplay", ".xml");
+        Path binary = Files.createTempFile("webplay", ".wpb");
+        Path converted = Files.createTempFile("webplay", ".xml");
+        try {
+            // More distinct values than the string table has slots, and values too long for it.
+            try (Writer out = Files.newBufferedWriter(xml)) {
+                RequestBuilder requestBuilder = new XmlTest(out).test();
+                for (int i = 0; i < BinaryFormat.STRING_SLOTS * 2; i++) {
+                    Headers headers = new Headers().add("Cookie", "session=" + i);
+                    requestBuilder = requestBuilder.request("/", "GET", headers, Payload.of(""))
+                            .assertion("text ".repeat(BinaryFormat.MAX_SLOT_STRING_LENGTH) + i, "textarea");
+                }
+                requestBuilder.end();
+            }
+            ScenarioConverter.toBinary(xml, binary);
+            ScenarioConverter.toXml(binary, converted);
+            assertEquals(Files.readString(xml), Files.readString(converted));
+        } finally {
+            Files.delete(xml);
+            Files.delete(binary);
+            Files.delete(converted);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testBinaryCorrupt() throws Exception {
+        Path binary = Files.createTempFile("webplay", ".wpb");
+        Path converted = Files.createTempFile("webplay", ".xml");
+        try {
+            // A request with an inline urlPath whose length is missing
+            Files.write(binary, new byte[]{'W', 'P', 'L', 'B', 0, BinaryFormat.VERSION, BinaryFormat.REQUEST, 1, 0});
+            ScenarioConverter.toXml(binary, converted);
+        } finally {
+            Files.delete(binary);
+            Files.delete(converted);
+        }
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        Path xml = Path.of(getClass().getResource("recorded-get.xml").toURI());
+        Path compressed = Files.createTempFile("webplay", ".xml.gz");
+        String html = "<html><body><input name='myTextfield' value='textValue' /><textarea name='myTextarea'>someText</textarea></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        List<String> assertions = new ArrayList<>();
+        try {
+            ScenarioConverter.toXml(xml, compressed);
+            byte[] bytes = Files.readAllBytes(compressed);
+            assertEquals(GZIPInputStream.GZIP_MAGIC, bytes[0] & 0xff | (bytes[1] & 0xff) << 8);
+            new RecordedTest(compressed).play("http://localhost:" + PORT_OF_APP + "/", (message, expected, actual) -> {
+                assertions.add(message);
+                assertEquals(message, expected, actual);
+            });
+        } finally {
+            app.stop();
+            Files.delete(compressed);
+        }
+
+        assertEquals(2, assertions.size());
+    }
+
+    @Test
+    public void testSubsetWithEntities() throws Exception {
+        // Entities declared by the document cannot be indexed, the recording is read completely instead.
+        Path recording = Files.createTempFile("webplay", ".xml");
+        Files.writeString(recording, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<!DOCTYPE test [<!ENTITY page \"2\">]><test>" +
+                "<request urlPath=\"/?page=1\" method=\"GET\"><assertion selector=\"input[name=myTextfield]\">" +
+                "<expectedAttr name=\"value\">textValue</expectedAttr></assertion></request>" +
+                "<request urlPath=\"/?page=&page;\" method=\"GET\"><assertion selector=\"input[name=myTextfield]\">" +
+                "<expectedAttr name=\"value\">textValue</expectedAttr></assertion></request>" +
+                "</test>");
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        Javalin app = Javalin.create().start(PORT_OF_APP).get("/", ctx -> ctx.html(html));
+        List<String> pages = new ArrayList<>();
+        try {
+            new RecordedTest(recording).subset(Pattern.compile("page=2")).play("http://localhost:" + PORT_OF_APP, (message, expected, actual) -> {
+                pages.add(message);
+                assertEquals(message, expected, actual);
+            });
+        } finally {
+            app.stop();
+            Files.deleteIfExists(recording.resolveSibling(recording.getFileName() + ".idx"));
+            Files.delete(recording);
+        }
+
+        assertEquals(1, pages.size());
+        assertTrue(pages.get(0).contains("/?page=2"));
+    }
+}
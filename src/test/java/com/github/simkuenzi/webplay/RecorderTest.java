@@ -1,17 +1,46 @@
 package com.github.simkuenzi.webplay;
 
+import com.github.simkuenzi.webplay.play.RecordedTest;
+import com.github.simkuenzi.webplay.record.Backpressure;
+import com.github.simkuenzi.webplay.record.Recorder;
 import com.github.simkuenzi.webplay.record.Recording;
+import com.github.simkuenzi.webplay.record.RecordingMXBean;
 import io.javalin.Javalin;
+import io.javalin.http.Handler;
+import org.junit.Assert;
 import org.junit.Test;
+import org.w3c.dom.Node;
 import org.xmlunit.builder.DiffBuilder;
 import org.xmlunit.builder.Input;
 import org.xmlunit.diff.Diff;
 import org.xmlunit.placeholder.PlaceholderDifferenceEvaluator;
+import org.xmlunit.xpath.JAXPXPathEngine;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.junit.Assert.*;
 import static org.xmlunit.matchers.CompareMatcher.isIdenticalTo;
@@ -65,13 +94,13 @@ public class RecorderTest {
                 assertOutput(testFs,
                         "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
                                 "<test>\n" +
-                                "  <request urlPath=\"/\" method=\"GET\">\n" +
+                                "  <request urlPath=\"/\" method=\"GET\" timestamp=\"${xmlunit.ignore}\" timeToFirstByte=\"${xmlunit.ignore}\" responseTime=\"${xmlunit.ignore}\">\n" +
                                 "    <header name=\"Connection\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Host\" value=\"localhost:10011\"/>\n" +
                                 "    <header name=\"HTTP2-Settings\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Upgrade\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
                                 "    <assertion selector=\"input[name=myTextfield]\">\n" +
                                 "      <expectedAttr xml:space=\"preserve\" name=\"value\">textValue</expectedAttr></assertion>\n" +
                                 "    <assertion selector=\"textarea[name=myTextarea]\">\n" +
@@ -104,13 +133,13 @@ public class RecorderTest {
                 assertOutput(testFs,
                         "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
                                 "<test>\n" +
-                                "  <request urlPath=\"/\" method=\"POST\">\n" +
+                                "  <request urlPath=\"/\" method=\"POST\" timestamp=\"${xmlunit.ignore}\" timeToFirstByte=\"${xmlunit.ignore}\" responseTime=\"${xmlunit.ignore}\">\n" +
                                 "    <header name=\"Connection\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"Content-Length\" value=\"13\"/>\n" +
                                 "    <header name=\"Host\" value=\"localhost:10011\"/>\n" +
                                 "    <header name=\"HTTP2-Settings\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"Content-Length\" value=\"13\"/>\n" +
                                 "    <header name=\"Upgrade\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
                                 "    <header name=\"Content-Type\" value=\"application/x-www-form-urlencoded\"/>\n" +
                                 "    <payload xml:space=\"preserve\">myField=Hello</payload></request>\n" +
                                 "</test>");
@@ -139,13 +168,13 @@ public class RecorderTest {
                 assertOutput(testFs,
                         "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
                                 "<test>\n" +
-                                "  <request urlPath=\"/\" method=\"GET\">\n" +
+                                "  <request urlPath=\"/\" method=\"GET\" timestamp=\"${xmlunit.ignore}\" timeToFirstByte=\"${xmlunit.ignore}\" responseTime=\"${xmlunit.ignore}\">\n" +
                                 "    <header name=\"Connection\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Host\" value=\"localhost:10011\"/>\n" +
                                 "    <header name=\"HTTP2-Settings\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Upgrade\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
                                 "    <assertion selector=\"input[name=myTextfield]\">\n" +
                                 "      <expectedAttr xml:space=\"preserve\" name=\"value\">textValue</expectedAttr></assertion>\n" +
                                 "    <assertion selector=\"textarea[name=myTextarea]\">\n" +
@@ -193,13 +222,13 @@ public class RecorderTest {
                 assertOutput(testFs,
                         "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
                                 "<test>\n" +
-                                "  <request urlPath=\"/html\" method=\"GET\">\n" +
+                                "  <request urlPath=\"/html\" method=\"GET\" timestamp=\"${xmlunit.ignore}\" timeToFirstByte=\"${xmlunit.ignore}\" responseTime=\"${xmlunit.ignore}\">\n" +
                                 "    <header name=\"Connection\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Host\" value=\"localhost:10011\"/>\n" +
                                 "    <header name=\"HTTP2-Settings\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Upgrade\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
                                 "    <assertion selector=\"input[name=myTextfield]\">\n" +
                                 "      <expectedAttr xml:space=\"preserve\" name=\"value\">textValue</expectedAttr></assertion>\n" +
                                 "  </request>\n" +
@@ -230,25 +259,25 @@ public class RecorderTest {
                 assertOutput(testFs,
                         "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
                                 "<test>\n" +
-                                "  <request urlPath=\"/\" method=\"GET\">\n" +
+                                "  <request urlPath=\"/\" method=\"GET\" timestamp=\"${xmlunit.ignore}\" timeToFirstByte=\"${xmlunit.ignore}\" responseTime=\"${xmlunit.ignore}\">\n" +
                                 "    <header name=\"Connection\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Host\" value=\"localhost:10011\"/>\n" +
                                 "    <header name=\"HTTP2-Settings\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Upgrade\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
                                 "    <assertion selector=\"input[name=myTextfield]\">\n" +
                                 "      <expectedAttr xml:space=\"preserve\" name=\"value\">textValue</expectedAttr></assertion>\n" +
                                 "    <assertion selector=\"textarea[name=myTextarea]\">\n" +
                                 "      <expectedText xml:space=\"preserve\">someText</expectedText></assertion>\n" +
                                 "  </request>\n" +
-                                "  <request urlPath=\"/\" method=\"GET\">\n" +
+                                "  <request urlPath=\"/\" method=\"GET\" timestamp=\"${xmlunit.ignore}\" timeToFirstByte=\"${xmlunit.ignore}\" responseTime=\"${xmlunit.ignore}\">\n" +
                                 "    <header name=\"Connection\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Host\" value=\"localhost:10011\"/>\n" +
                                 "    <header name=\"HTTP2-Settings\" value=\"${xmlunit.ignore}\"/>\n" +
-                                "    <header name=\"Content-Length\" value=\"0\"/>\n" +
                                 "    <header name=\"Upgrade\" value=\"${xmlunit.ignore}\"/>\n" +
+                                "    <header name=\"User-Agent\" value=\"${xmlunit.ignore}\"/>\n" +
                                 "    <assertion selector=\"input[name=myTextfield]\">\n" +
                                 "      <expectedAttr xml:space=\"preserve\" name=\"value\">textValue</expectedAttr></assertion>\n" +
                                 "    <assertion selector=\"textarea[name=myTextarea]\">\n" +
@@ -261,6 +290,227 @@ public class RecorderTest {
         });
     }
 
+    @Test
+    public void parallelConnections() throws Exception {
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        TestFs.use(testFs -> {
+            TestEnv testEnv = new TestEnv(testFs);
+            Javalin app = testEnv.javalin().get("/:page", ctx -> ctx.html(html));
+            try {
+                testEnv.record(() -> {
+                    // HTTP/1.1 makes the client open a connection for each concurrent request.
+                    HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                    List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+                    for (int i = 0; i < 6; i++) {
+                        HttpRequest request = HttpRequest.newBuilder()
+                                .GET().uri(testEnv.recorderUri("/page" + i))
+                                .build();
+                        responses.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+                    }
+                    for (CompletableFuture<HttpResponse<String>> response : responses) {
+                        assertEquals(html, response.get().body());
+                    }
+                });
+                Iterable<Node> requests = new JAXPXPathEngine().selectNodes("/test/request", Input.fromFile(testFs.outputFile().toFile()).build());
+                assertEquals(6, StreamSupport.stream(requests.spliterator(), false).count());
+            } finally {
+                app.stop();
+            }
+        });
+    }
+
+    @Test
+    public void chunked() throws Exception {
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        TestFs.use(testFs -> {
+            TestEnv testEnv = new TestEnv(testFs);
+            // A stream without length is sent chunked.
+            Javalin app = testEnv.javalin().post("/", ctx -> ctx.contentType("text/html")
+                    .result(new ByteArrayInputStream((ctx.body() + html).getBytes(StandardCharsets.UTF_8))));
+            try {
+                testEnv.record(() -> {
+                    HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                    for (int i = 0; i < 2; i++) {
+                        HttpRequest request = HttpRequest.newBuilder()
+                                .POST(HttpRequest.BodyPublishers.ofInputStream(() ->
+                                        new ByteArrayInputStream("myField=Hello".getBytes(StandardCharsets.UTF_8))))
+                                .uri(testEnv.recorderUri())
+                                .header("Content-Type", "application/x-www-form-urlencoded")
+                                .build();
+                        assertEquals("myField=Hello" + html, httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                    }
+                });
+                JAXPXPathEngine xpath = new JAXPXPathEngine();
+                assertEquals("myField=Hello", xpath.evaluate("/test/request[2]/payload", Input.fromFile(testFs.outputFile().toFile()).build()));
+                assertEquals("textValue", xpath.evaluate("/test/request[2]/assertion/expectedAttr", Input.fromFile(testFs.outputFile().toFile()).build()));
+            } finally {
+                app.stop();
+            }
+        });
+    }
+
+    @Test
+    public void binaryPayload() throws Exception {
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        byte[] upload = {0, 1, 2, (byte) 0xff, (byte) 0xfe};
+        TestFs.use(testFs -> {
+            TestEnv testEnv = new TestEnv(testFs);
+            Javalin app = testEnv.javalin().post("/", ctx -> ctx.html(html));
+            try {
+                testEnv.record(() -> {
+                    HttpClient httpClient = HttpClient.newHttpClient();
+                    HttpRequest request = HttpRequest.newBuilder()
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(upload))
+                            .uri(testEnv.recorderUri())
+                            .header("Content-Type", "application/octet-stream")
+                            .build();
+                    assertEquals(html, httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                });
+                JAXPXPathEngine xpath = new JAXPXPathEngine();
+                assertEquals("base64", xpath.evaluate("/test/request/payload/@encoding", Input.fromFile(testFs.outputFile().toFile()).build()));
+                assertEquals(Base64.getEncoder().encodeToString(upload), xpath.evaluate("/test/request/payload", Input.fromFile(testFs.outputFile().toFile()).build()));
+            } finally {
+                app.stop();
+            }
+        });
+    }
+
+    @Test
+    public void duplicateHeaders() throws Exception {
+        TestFs.use(testFs -> {
+            TestEnv testEnv = new TestEnv(testFs);
+            Javalin app = testEnv.javalin().get("/", ctx -> ctx.html("<html></html>"));
+            try {
+                testEnv.record(() -> {
+                    HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                    HttpRequest request = HttpRequest.newBuilder()
+                            .GET().uri(testEnv.recorderUri())
+                            .header("X-Test", "first")
+                            .header("X-Test", "second")
+                            .build();
+                    httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                });
+                Iterable<Node> values = new JAXPXPathEngine().selectNodes("/test/request/header[@name='X-Test']/@value", Input.fromFile(testFs.outputFile().toFile()).build());
+                assertEquals(List.of("first", "second"), StreamSupport.stream(values.spliterator(), false).map(Node::getNodeValue).collect(Collectors.toList()));
+            } finally {
+                app.stop();
+            }
+        });
+    }
+
+    @Test
+    public void sharedHeaders() throws Exception {
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        TestFs.use(testFs -> {
+            TestEnv testEnv = new TestEnv(testFs);
+            Javalin app = testEnv.javalin().get("/", ctx -> ctx.html(html));
+            try {
+                testEnv.record(new Recorder().shareHeaders(true), () -> {
+                    HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                    for (int i = 0; i < 3; i++) {
+                        HttpRequest request = HttpRequest.newBuilder()
+                                .GET().uri(testEnv.recorderUri())
+                                .header("X-Test", "shared")
+                                .build();
+                        assertEquals(html, httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                    }
+                });
+                JAXPXPathEngine xpath = new JAXPXPathEngine();
+                assertEquals("1", xpath.evaluate("count(/test/headers)", Input.fromFile(testFs.outputFile().toFile()).build()));
+                assertEquals("0", xpath.evaluate("count(/test/request/header)", Input.fromFile(testFs.outputFile().toFile()).build()));
+                assertEquals("3", xpath.evaluate("count(/test/request[@headers='0'])", Input.fromFile(testFs.outputFile().toFile()).build()));
+
+                List<String> assertions = new ArrayList<>();
+                new RecordedTest(testFs.outputFile()).play(testEnv.appUri(), (message, expected, actual) -> {
+                    assertions.add(message);
+                    assertEquals(message, expected, actual);
+                });
+                assertEquals(3, assertions.size());
+            } finally {
+                app.stop();
+            }
+        });
+    }
+
+    @Test
+    public void index() throws Exception {
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        TestFs.use(testFs -> {
+            TestEnv testEnv = new TestEnv(testFs);
+            List<String> pages = new ArrayList<>();
+            Javalin app = testEnv.javalin().get("/", ctx -> {
+                pages.add(ctx.queryParam("page"));
+                ctx.html(html);
+            });
+            try {
+                testEnv.record(new Recorder().index(true), () -> {
+                    HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                    for (int i = 0; i < 5; i++) {
+                        HttpRequest request = HttpRequest.newBuilder()
+                                .GET().uri(testEnv.recorderUri("/?page=" + i))
+                                .build();
+                        assertEquals(html, httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                    }
+                });
+                Path index = testFs.outputFile().resolveSibling("scenario.xml.idx");
+                assertTrue(Files.exists(index));
+
+                pages.clear();
+                RecordedTest recordedTest = new RecordedTest(testFs.outputFile());
+                recordedTest.subset(1, 3).play(testEnv.appUri(), Assert::assertEquals);
+                assertEquals(List.of("1", "2"), pages);
+
+                // A missing index is rebuilt.
+                Files.delete(index);
+                pages.clear();
+                recordedTest.subset(Pattern.compile("page=4")).play(testEnv.appUri(), Assert::assertEquals);
+                assertEquals(List.of("4"), pages);
+                assertTrue(Files.exists(index));
+            } finally {
+                app.stop();
+            }
+        });
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        TestFs.use(testFs -> {
+            Files.createFile(testFs.stopFile());
+            TestEnv testEnv = new TestEnv(testFs);
+            Javalin app = testEnv.javalin()
+                    .get("/", ctx -> ctx.html(html))
+                    .get("/style.css", ctx -> ctx.contentType("text/css").result("body {}"));
+            try {
+                Recording recording = testEnv.open();
+                Thread t = testEnv.record(recording);
+                ObjectName name = new ObjectName("com.github.simkuenzi.webplay:type=Recording,port=" + TestEnv.PORT_OF_RECORDER);
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                try (recording) {
+                    HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                    httpClient.send(HttpRequest.newBuilder().GET().uri(testEnv.recorderUri()).build(), HttpResponse.BodyHandlers.ofString());
+                    httpClient.send(HttpRequest.newBuilder().GET().uri(testEnv.recorderUri("/style.css")).build(), HttpResponse.BodyHandlers.ofString());
+                    assertTrue(server.isRegistered(name));
+                    assertEquals(1L, server.getAttribute(name, "AcceptedConnections"));
+                }
+                t.join();
+                assertFalse(server.isRegistered(name));
+
+                RecordingMXBean metrics = recording.metrics();
+                assertEquals(2, metrics.getExchanges());
+                assertEquals(1, metrics.getCapturedExchanges());
+                assertEquals(1, metrics.getSkippedExchanges());
+                assertEquals(1, metrics.getExtractions());
+                assertEquals(metrics.getBytesFromClient(), metrics.getBytesToApp());
+                assertEquals(metrics.getBytesFromApp(), metrics.getBytesToClient());
+                assertTrue(metrics.getBytesToClient() > html.length());
+                assertTrue(metrics.getResponseLatencyMillis().get("max") > 0);
+            } finally {
+                app.stop();
+            }
+        });
+    }
+
     private void assertOutput(TestFs testFs, String expected) {
         Diff diff = DiffBuilder
                 .compare(Input.fromString(expected))
@@ -273,4 +523,167 @@ public class RecorderTest {
             assertThat(diff.getTestSource(), isIdenticalTo(diff.getControlSource()));
         }
     }
+
+    @Test
+    public void dropBackpressure() throws Exception {
+        TestFs.use(testFs -> {
+            recordConcurrently(testFs, new Recorder().extractionThreads(1).extractionQueueSize(1).backpressure(Backpressure.DROP));
+            // Dropped requests are recorded without assertions, the others with all of them.
+            JAXPXPathEngine xpath = new JAXPXPathEngine();
+            assertEquals("8", xpath.evaluate("count(/test/request)", Input.fromFile(testFs.outputFile().toFile()).build()));
+            assertEquals("0", xpath.evaluate("count(/test/request[count(assertion) != 0 and count(assertion) != 50])",
+                    Input.fromFile(testFs.outputFile().toFile()).build()));
+            assertNotEquals("0", xpath.evaluate("count(/test/request[not(assertion)])", Input.fromFile(testFs.outputFile().toFile()).build()));
+        });
+    }
+
+    @Test
+    public void spillBackpressure() throws Exception {
+        TestFs.use(testFs -> {
+            recordConcurrently(testFs, new Recorder().extractionThreads(1).extractionQueueSize(1).backpressure(Backpressure.SPILL));
+            JAXPXPathEngine xpath = new JAXPXPathEngine();
+            assertEquals("8", xpath.evaluate("count(/test/request)", Input.fromFile(testFs.outputFile().toFile()).build()));
+            assertEquals("400", xpath.evaluate("count(/test/request/assertion)", Input.fromFile(testFs.outputFile().toFile()).build()));
+        });
+    }
+
+    // Responses of concurrent connections, which take a while to extract assertions from, fill the queue.
+    private void recordConcurrently(TestFs testFs, Recorder recorder) throws Exception {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 50; i++) {
+            html.append("<p>").append("text ".repeat(1000)).append("</p><input name='field").append(i).append("' value='").append(i).append("' />");
+        }
+        html.append("</body></html>");
+        TestEnv testEnv = new TestEnv(testFs);
+        Javalin app = testEnv.javalin().get("/:page", ctx -> ctx.html(html.toString()));
+        try {
+            testEnv.record(recorder, () -> {
+                HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    HttpRequest request = HttpRequest.newBuilder()
+                            .GET().uri(testEnv.recorderUri("/page" + i))
+                            .build();
+                    responses.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+                }
+                for (CompletableFuture<HttpResponse<String>> response : responses) {
+                    assertEquals(html.toString(), response.get().body());
+                }
+            });
+        } finally {
+            app.stop();
+        }
+    }
+
+    @Test
+    public void upstreamConnections() throws Exception {
+        String html = "<html><body><input name='myTextfield' value='textValue' /></body></html>";
+        TestFs.use(testFs -> {
+            TestEnv testEnv = new TestEnv(testFs);
+            List<Integer> ports = new ArrayList<>();
+            Handler handler = ctx -> {
+                ports.add(ctx.req.getRemotePort());
+                ctx.html(html);
+            };
+            AtomicReference<Javalin> app = new AtomicReference<>(testEnv.javalin().get("/", handler));
+            try {
+                testEnv.record(() -> {
+                    String request = "GET / HTTP/1.1\r\nHost: localhost\r\n";
+                    try (Socket socket = new Socket("localhost", TestEnv.PORT_OF_RECORDER)) {
+                        assertEquals(html, exchange(socket, request + "\r\n"));
+                        assertEquals(html, exchange(socket, request + "\r\n"));
+                        assertEquals(html, exchange(socket, request + "Connection: close\r\n\r\n"));
+                    }
+                    try (Socket socket = new Socket("localhost", TestEnv.PORT_OF_RECORDER)) {
+                        assertEquals(html, exchange(socket, "GET / HTTP/1.0\r\n\r\n"));
+                    }
+                    try (Socket socket = new Socket("localhost", TestEnv.PORT_OF_RECORDER)) {
+                        assertEquals(html, exchange(socket, request + "\r\n"));
+                    }
+                    // The idle connection kept by the recorder is closed by the app and must not be used again.
+                    app.get().stop();
+                    app.set(testEnv.javalin().get("/", handler));
+                    try (Socket socket = new Socket("localhost", TestEnv.PORT_OF_RECORDER)) {
+                        assertEquals(html, exchange(socket, request + "\r\n"));
+                    }
+                });
+            } finally {
+                app.get().stop();
+            }
+            // The connection to the app is reused until the client asks to close it. HTTP/1.0 closes it anyway.
+            assertEquals(6, ports.size());
+            assertEquals(ports.get(0), ports.get(1));
+            assertEquals(ports.get(0), ports.get(2));
+            assertNotEquals(ports.get(2), ports.get(3));
+            assertNotEquals(ports.get(3), ports.get(4));
+            assertNotEquals(ports.get(4), ports.get(5));
+            assertEquals("6", new JAXPXPathEngine().evaluate("count(/test/request)", Input.fromFile(testFs.outputFile().toFile()).build()));
+        });
+    }
+
+    // Sends a request and reads the response up to the end of its body, which must have a Content-Length.
+    private static String exchange(Socket socket, String request) throws IOException {
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+        InputStream in = socket.getInputStream();
+        StringBuilder head = new StringBuilder();
+        while (head.indexOf("\r\n\r\n") < 0) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed before end of head.");
+            }
+            head.append((char) b);
+        }
+        Matcher contentLength = Pattern.compile("(?i)content-length: *(\\d+)").matcher(head);
+        assertTrue(head.toString(), contentLength.find());
+        return new String(in.readNBytes(Integer.parseInt(contentLength.group(1))), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void spilledBodies() throws Exception {
+        StringBuilder body = new StringBuilder("myField=");
+        for (int i = 0; i < 100_000; i++) {
+            body.append((char) ('a' + i % 26));
+        }
+        String html = "<html><body><input name='myTextfield' value='textValue' /><p>" + "text ".repeat(1000) + "</p></body></html>";
+        TestFs.use(testFs -> {
+            Set<Path> existing = captureFiles();
+            TestEnv testEnv = new TestEnv(testFs);
+            List<String> received = new ArrayList<>();
+            Javalin app = testEnv.javalin().post("/", ctx -> {
+                received.add(ctx.body());
+                ctx.html(html);
+            });
+            try {
+                // Request and response are kept in temporary files instead of memory.
+                testEnv.record(new Recorder().spillThreshold(1024), () -> {
+                    HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                    HttpRequest request = HttpRequest.newBuilder()
+                            .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                            .uri(testEnv.recorderUri())
+                            .header("Content-Type", "application/x-www-form-urlencoded")
+                            .build();
+                    assertEquals(html, httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                });
+                // The temporary files are deleted once written to the recording.
+                assertEquals(existing, captureFiles());
+
+                List<String> assertions = new ArrayList<>();
+                new RecordedTest(testFs.outputFile()).play(testEnv.appUri(), (message, expected, actual) -> {
+                    assertions.add(message);
+                    assertEquals(message, expected, actual);
+                });
+                assertEquals(1, assertions.size());
+            } finally {
+                app.stop();
+            }
+            // Recorded and replayed request carry the same body.
+            assertEquals(List.of(body.toString(), body.toString()), received);
+        });
+    }
+
+    private static Set<Path> captureFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().matches("webplay.*\\.capture")).collect(Collectors.toSet());
+        }
+    }
 }
@@ -19,7 +19,11 @@ class TestEnv {
     }
 
     void record(Test test) throws Exception {
-        try (Recording recording = open()) {
+        record(new Recorder(), test);
+    }
+
+    void record(Recorder recorder, Test test) throws Exception {
+        try (Recording recording = recorder.open(PORT_OF_RECORDER, "/")) {
             record(recording);
             test.run();
         }